@@ -0,0 +1 @@
+# Lets pytest import skycatdev from here, see tests/
@@ -1,3 +1,4 @@
+import atexit
 import logging
 import string
 import sys
@@ -7,8 +8,6 @@ from typing import override
 
 from gymnasium.wrappers import (
     TimeLimit,
-    FrameStackObservation,
-    FilterObservation,
     TransformAction,
 )
 from py4j.java_collections import JavaArray
@@ -23,14 +22,18 @@ from stable_baselines3.common.evaluation import evaluate_policy
 from stable_baselines3.common.logger import HParam
 from stable_baselines3.common.monitor import Monitor
 from stable_baselines3.common.on_policy_algorithm import OnPolicyAlgorithm
-from stable_baselines3.common.vec_env import DummyVecEnv
+from stable_baselines3.common.vec_env import (
+    DummyVecEnv,
+    VecEnv,
+    VecMonitor,
+)
+
+from skycatdev.rlmc.log_channel import LogChannel
+from skycatdev.rlmc.wrappers.java_vec_env import JavaVecEnv
 
 from skycatdev.rlmc.wrappers.wrapped_basic_player_observation_environment import (
     WrappedBasicPlayerObservationEnvironment,
 )
-from skycatdev.rlmc.wrappers.wrapped_fight_enemy_environment import (
-    WrappedFightEnemyEnvironment,
-)
 
 
 class HParamCallback(
@@ -68,11 +71,11 @@ class HParamCallback(
 
 class Entrypoint(object):
     envs = {}
+    task_envs = {}  # The envs before time limits and monitoring, used by JavaVecEnv
 
     # noinspection PyPep8Naming
     def connectEnvironment(self, environment: string, java_environment: JavaObject):
         env_settings: JavaObject = java_environment.getSettings()
-        frame_stack: int = env_settings.getFrameStack()
         time_limit: int = env_settings.getTimeLimit()
 
         if environment == "skybridge":
@@ -87,8 +90,10 @@ class Entrypoint(object):
                 action[9] = 0
                 return action
 
-            env = WrappedFightEnemyEnvironment(java_environment, get_gateway())
-            env = FilterObservation(env, filter_keys=["enemy"])
+            # Only observes the enemy by default, see FightEnemyEnvironment#getDefaultObservationComponents
+            env = WrappedBasicPlayerObservationEnvironment(
+                java_environment, get_gateway()
+            )
             env = TransformAction(env, fix_action, env.action_space)
         else:
             assert (
@@ -98,8 +103,10 @@ class Entrypoint(object):
                 java_environment, get_gateway()
             )
 
-        if frame_stack > 1:
-            env = FrameStackObservation(env, frame_stack)
+        if env_settings.shouldUseSharedMemory():
+            env.unwrapped.use_shared_memory()
+        # Frames are already stacked by the Java environment
+        self.task_envs[java_environment] = env
         if time_limit > 0:
             env = TimeLimit(env, max_episode_steps=time_limit)
         if env_settings.shouldUseMonitor():
@@ -107,6 +114,30 @@ class Entrypoint(object):
         env = DummyVecEnv([lambda: env])
         self.envs[java_environment] = env
 
+    def make_vec_env(self, environment: JavaObject) -> VecEnv:
+        """
+        Make a VecEnv that steps environment and environmentCount - 1 copies of it in the same tick.
+        """
+        env_settings: JavaObject = environment.getSettings()
+        java_vector_env = (
+            gateway.jvm.com.skycatdev.rlmc.environment.VectorEnvironment()
+        )
+        java_vector_env.add(environment)
+        envs = [self.task_envs[environment]]
+        for _ in range(env_settings.getEnvironmentCount() - 1):
+            another = environment.makeAnother().get().get()
+            java_vector_env.add(another)
+            # Connected before makeAnother returns it, see connectEnvironment
+            envs.append(self.task_envs[another])
+        env = JavaVecEnv(
+            java_vector_env,
+            envs,
+            max_episode_steps=env_settings.getTimeLimit(),
+        )
+        if env_settings.shouldUseMonitor():
+            env = VecMonitor(env)
+        return env
+
     # noinspection PyPep8Naming
     def runKwargs(self, environment: JavaObject, ees: JavaObject):
         save_path: str | None = ees.getSavePath()
@@ -121,6 +152,8 @@ class Entrypoint(object):
         policy_kwargs: dict[str, Any] = {}
         if net_arch is not None:
             policy_kwargs["net_arch"] = list(net_arch)
+        if ees.isTraining() and environment.getSettings().getEnvironmentCount() > 1:
+            self.envs[environment] = self.make_vec_env(environment)
         if load:
             if algorithm_str == "A2C":
                 algorithm = A2C.load(
@@ -214,21 +247,19 @@ gateway = JavaGateway(
 )
 
 
+# Records are sent to Java in batches, so logging doesn't make a gateway call each time
+log_channel = LogChannel(
+    lambda batch: gateway.jvm.com.skycatdev.rlmc.Rlmc.pythonLogBatch(batch)
+)
+atexit.register(log_channel.flush)
+
+
 class Log4jHandler(logging.Handler):
     @override
     def emit(self, record):
         if record.name.startswith("py4j"):
             return  # otherwise Py4j causes infinite recursion
-        message = self.format(record)
-        try:
-            gateway.jvm.com.skycatdev.rlmc.Rlmc.pythonLog(record.levelname, message)
-        except RecursionError as e:
-            print(e, file=sys.stderr)
-            print(
-                "RecursionError caught while printing, please report. Printing message via stdout.",
-                file=sys.stderr,
-            )
-            print(message)
+        log_channel.log(record.levelname, self.format(record))
 
 
 class Log4jStream:
@@ -236,9 +267,7 @@ class Log4jStream:
     def write(self, message):
         message = message.strip()
         if message:
-            gateway.jvm.com.skycatdev.rlmc.Rlmc.pythonLog(
-                "INFO", f"STDOUT/ERR: {message}"
-            )
+            log_channel.log("INFO", f"STDOUT/ERR: {message}")
 
     def flush(self):
         pass
@@ -0,0 +1,67 @@
+import sys
+import threading
+from typing import Callable
+
+# See Rlmc#PYTHON_LOG_RECORD_SEPARATOR and Rlmc#PYTHON_LOG_LEVEL_SEPARATOR
+RECORD_SEPARATOR = "\u001e"
+LEVEL_SEPARATOR = "\u001f"
+
+
+class LogChannel(object):
+    """
+    Collects log records and sends them to Java in batches from its own thread, so that logging never waits on the gateway.
+    A batch is sent every flush_interval seconds, or sooner once max_records are waiting.
+    """
+
+    def __init__(
+        self,
+        send: Callable[[str], None],
+        flush_interval: float = 0.5,
+        max_records: int = 256,
+    ):
+        """
+        :param send: Sends one batch, like Rlmc#pythonLogBatch.
+        """
+        self._send = send
+        self._flush_interval = flush_interval
+        self._max_records = max_records
+        self._records: list[str] = []
+        self._condition = threading.Condition()
+        self._thread = threading.Thread(
+            target=self._run, name="RLMC Log Channel", daemon=True
+        )
+        self._thread.start()
+
+    def log(self, level: str, message: str):
+        with self._condition:
+            self._records.append(
+                f"{level}{LEVEL_SEPARATOR}{message.replace(RECORD_SEPARATOR, ' ')}"
+            )
+            if len(self._records) >= self._max_records:
+                self._condition.notify()
+
+    def flush(self):
+        """
+        Send whatever is waiting now, on this thread.
+        """
+        with self._condition:
+            records = self._records
+            self._records = []
+        if records:
+            try:
+                self._send(RECORD_SEPARATOR.join(records))
+            except Exception as e:
+                # Logging it would just come back here
+                print(
+                    f"Couldn't send {len(records)} log records to Java: {e}",
+                    file=sys.__stderr__,
+                )
+                for record in records:
+                    print(record.replace(LEVEL_SEPARATOR, ": ", 1), file=sys.__stderr__)
+
+    def _run(self):
+        while True:
+            with self._condition:
+                if len(self._records) < self._max_records:
+                    self._condition.wait(self._flush_interval)
+            self.flush()
@@ -0,0 +1,109 @@
+import mmap
+import struct
+import time
+
+from py4j.java_gateway import JavaObject
+
+# Slot layout, see SharedMemoryTransport.java
+COMMAND_STEP = 1
+COMMAND_RESET = 2
+STATUS_OK = 0
+_REQUEST = 0
+_COMMAND = 4
+_RESPONSE = 16
+_STATUS = 20
+_REWARD = 24
+_TERMINATED = 32
+_TRUNCATED = 33
+_CLOSED = 34
+# How many times to check for a response before sleeping between checks
+_SPINS = 1000
+# How long to wait for a response before giving up, in seconds. Resets can make a new world, so this is generous.
+DEFAULT_TIMEOUT = 300.0
+
+_mmaps: dict[str, mmap.mmap] = {}
+
+
+def _open(path: str) -> mmap.mmap:
+    if path not in _mmaps:
+        with open(path, "r+b") as file:
+            _mmaps[path] = mmap.mmap(file.fileno(), 0)
+    return _mmaps[path]
+
+
+class SharedMemorySlot(object):
+    def __init__(self, java_slot: JavaObject, timeout: float = DEFAULT_TIMEOUT):
+        """
+        Wraps a slot of the shared memory transport, so that steps and resets don't go through Py4J.
+        :param java_slot: The slot, from Environment#openSharedMemory.
+        :param timeout: How long to wait for each response before raising, in seconds.
+        """
+        self._timeout = timeout
+        self._mmap = _open(java_slot.getPath())
+        self._offset = java_slot.getOffset()
+        self._action_offset = java_slot.getActionOffset()
+        self._action_size = java_slot.getActionSize()
+        self._observation_offset = java_slot.getObservationOffset()
+        self._observation_size = java_slot.getObservationSize()
+        self._request = struct.unpack_from("<i", self._mmap, self._offset + _REQUEST)[0]
+
+    def step(self, action: bytes) -> tuple[bytes, float, bool, bool]:
+        """
+        :param action: The encoded action.
+        :return: The encoded observation, reward, terminated, and truncated.
+        """
+        assert (
+            len(action) == self._action_size
+        ), f"Expected {self._action_size} action bytes, got {len(action)}"
+        start = self._action_offset
+        self._mmap[start : start + self._action_size] = action
+        return self._send(COMMAND_STEP, None)
+
+    def reset(self, seed: int | None) -> bytes:
+        """
+        :param seed: The seed to reset with, if any.
+        :return: The encoded observation.
+        """
+        return self._send(COMMAND_RESET, seed)[0]
+
+    def _send(self, command: int, seed: int | None) -> tuple[bytes, float, bool, bool]:
+        struct.pack_into(
+            "<iii",
+            self._mmap,
+            self._offset + _COMMAND,
+            command,
+            seed is not None,
+            seed or 0,
+        )
+        # Publishing the request number has to come last, the server picks the request up as soon as it changes
+        self._request = (self._request + 1) % 2**31
+        struct.pack_into("<i", self._mmap, self._offset + _REQUEST, self._request)
+        spins = 0
+        deadline = time.monotonic() + self._timeout
+        while (
+            struct.unpack_from("<i", self._mmap, self._offset + _RESPONSE)[0]
+            != self._request
+        ):
+            spins += 1
+            if spins > _SPINS:
+                if self._mmap[self._offset + _CLOSED] != 0:
+                    raise RuntimeError(
+                        "The environment closed its shared memory slot while waiting for a response."
+                    )
+                if time.monotonic() > deadline:
+                    raise TimeoutError(
+                        f"No shared memory response after {self._timeout} seconds, see the server log for details."
+                    )
+                time.sleep(0.0001)
+        status = struct.unpack_from("<i", self._mmap, self._offset + _STATUS)[0]
+        if status != STATUS_OK:
+            raise RuntimeError(
+                "Shared memory request failed, see the server log for details."
+            )
+        start = self._observation_offset
+        return (
+            bytes(self._mmap[start : start + self._observation_size]),
+            struct.unpack_from("<d", self._mmap, self._offset + _REWARD)[0],
+            self._mmap[self._offset + _TERMINATED] != 0,
+            self._mmap[self._offset + _TRUNCATED] != 0,
+        )
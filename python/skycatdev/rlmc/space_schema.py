@@ -0,0 +1,115 @@
+import json
+from dataclasses import dataclass
+from typing import Any
+
+import numpy as np
+from gymnasium import Space
+from gymnasium.spaces import Box, Dict, Discrete, MultiDiscrete
+from py4j.java_gateway import JavaObject
+
+
+@dataclass(frozen=True)
+class Field:
+    """
+    One array in the encoded bytes. See SpaceSchema.Field in Java.
+    """
+
+    name: str
+    dtype: np.dtype
+    shape: tuple[int, ...]
+    offset: int
+    strides: tuple[int, ...]
+    low: np.ndarray
+    high: np.ndarray
+    discrete: bool
+
+    def space(self) -> Space:
+        if self.discrete:
+            if self.shape == ():
+                return Discrete(int(self.high.item()) + 1)
+            return MultiDiscrete(
+                np.broadcast_to(self.high + 1, self.shape).astype(np.int64)
+            )
+        return Box(
+            np.broadcast_to(self.low, self.shape),
+            np.broadcast_to(self.high, self.shape),
+            self.shape,
+            self.dtype.newbyteorder("="),
+        )
+
+    def view(self, data: bytes | bytearray | memoryview) -> np.ndarray:
+        """
+        :return: The field's values in data, without copying them. Read-only unless data is writable.
+        """
+        return np.ndarray(
+            self.shape,
+            dtype=self.dtype,
+            buffer=data,
+            offset=self.offset,
+            strides=self.strides,
+        )
+
+
+def _bound(values: list[float]) -> np.ndarray:
+    # One value has to broadcast to shapes with no axes too
+    return np.asarray(values[0] if len(values) == 1 else values)
+
+
+class SpaceSchema(object):
+    """
+    The layout of an encoded observation or action, from Environment#getObservationSchema or Environment#getActionSchema.
+    The JSON is {"size": bytes, "fields": [{"name", "dtype", "shape", "offset", "strides", "low", "high", "discrete"}, ...]},
+    where low and high are either one value or one per index of the last axis.
+    """
+
+    def __init__(self, schema_json: str):
+        schema = json.loads(schema_json)
+        self.size: int = schema["size"]
+        self.fields = [
+            Field(
+                name=field["name"],
+                dtype=np.dtype(field["dtype"]),
+                shape=tuple(field["shape"]),
+                offset=field["offset"],
+                strides=tuple(field["strides"]),
+                low=_bound(field["low"]),
+                high=_bound(field["high"]),
+                discrete=field["discrete"],
+            )
+            for field in schema["fields"]
+        ]
+
+    @classmethod
+    def from_java(cls, java_schema: JavaObject) -> "SpaceSchema":
+        return cls(java_schema.toJson())
+
+    def space(self) -> Space:
+        """
+        :return: The only field's space if there's one field, or a Dict of every field's space by name.
+        """
+        if len(self.fields) == 1:
+            return self.fields[0].space()
+        return Dict({field.name: field.space() for field in self.fields})
+
+    def decode(self, data: bytes | bytearray | memoryview) -> Any:
+        """
+        Read encoded bytes without copying them, matching space().
+        """
+        assert (
+            len(data) == self.size
+        ), f"Expected {self.size} encoded bytes, got {len(data)}"
+        if len(self.fields) == 1:
+            return self.fields[0].view(data)
+        return {field.name: field.view(data) for field in self.fields}
+
+    def encode(self, value: Any) -> bytes:
+        """
+        Write a value matching space() the way the schema lays it out.
+        """
+        data = bytearray(self.size)
+        if len(self.fields) == 1:
+            self.fields[0].view(data)[...] = value
+        else:
+            for field in self.fields:
+                field.view(data)[...] = value[field.name]
+        return bytes(data)
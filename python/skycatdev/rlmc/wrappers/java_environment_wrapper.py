@@ -5,6 +5,7 @@ import gymnasium as gym
 from gymnasium.core import ObsType, ActType
 from py4j.java_gateway import JavaObject, JavaGateway
 
+from skycatdev.rlmc.shared_memory import SharedMemorySlot
 from skycatdev.rlmc.utils import java_map_to_dict
 
 
@@ -12,16 +13,36 @@ class WrappedJavaEnv(ABC, gym.Env):
     def __init__(self, java_env: JavaObject, java_gateway: JavaGateway):
         self.java_env = java_env
         self.java_view = java_gateway.new_jvm_view()
+        self.shared_memory: SharedMemorySlot | None = None
+
+    def use_shared_memory(self):
+        """
+        Step and reset through shared memory instead of Py4J. Requires encode_action and decode_observation.
+        """
+        self.shared_memory = SharedMemorySlot(self.java_env.openSharedMemory())
 
     def step(
         self, action: ActType
     ) -> tuple[ObsType, SupportsFloat, bool, bool, dict[str, Any]]:
+        if self.shared_memory is not None:
+            observation, reward, terminated, truncated = self.shared_memory.step(
+                self.encode_action(action)
+            )
+            return (
+                self.decode_observation(observation),
+                reward,
+                terminated,
+                truncated,
+                {},
+            )
         return self.unwrap_step(self.java_env.step(self.action_to_java(action)))
 
     def reset(
         self, seed: int | None = None, options: dict[str, Any] | None = None
     ) -> tuple[ObsType, dict[str, Any]]:
         super().reset(seed=seed)
+        if self.shared_memory is not None and options is None:
+            return self.decode_observation(self.shared_memory.reset(seed)), {}
         unwrapped = self.unwrap_reset(self.java_env.reset(seed, options))
         return unwrapped
 
@@ -33,13 +54,28 @@ class WrappedJavaEnv(ABC, gym.Env):
         pass
 
     @abstractmethod
-    def action_to_java(self, action: ActType) -> JavaObject:
+    def action_to_java(self, action: ActType) -> JavaObject | bytes:
+        """
+        Convert an action for Environment#step. Either the Java action, or the action encoded for Environment#step(byte[]).
+        """
         pass
 
     @abstractmethod
     def action_to_python(self, action: JavaObject) -> ActType:
         pass
 
+    def encode_action(self, action: ActType) -> bytes:
+        """
+        Encode an action the way Environment#decodeAction expects.
+        """
+        raise NotImplementedError(f"{type(self).__name__} can't encode actions")
+
+    def decode_observation(self, data: bytes) -> ObsType:
+        """
+        Decode an observation from Environment#getEncodedObservation.
+        """
+        raise NotImplementedError(f"{type(self).__name__} can't decode observations")
+
     def unwrap_step(
         self, step_tuple: JavaObject
     ) -> tuple[ObsType, float, bool, bool, dict[str, Any]]:
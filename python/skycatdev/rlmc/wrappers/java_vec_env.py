@@ -0,0 +1,159 @@
+from typing import Any, Sequence
+
+import gymnasium as gym
+import numpy as np
+from gymnasium.spaces import Dict
+from py4j.java_gateway import JavaObject
+from stable_baselines3.common.vec_env import VecEnv
+from stable_baselines3.common.vec_env.base_vec_env import (
+    VecEnvIndices,
+    VecEnvObs,
+    VecEnvStepReturn,
+)
+
+from skycatdev.rlmc.wrappers.java_environment_wrapper import WrappedJavaEnv
+
+
+def _wrappers(env: gym.Env) -> list[gym.Wrapper]:
+    """
+    :return: The wrappers around env, outermost first.
+    """
+    wrappers = []
+    while isinstance(env, gym.Wrapper):
+        wrappers.append(env)
+        env = env.env
+    return wrappers
+
+
+class JavaVecEnv(VecEnv):
+    def __init__(
+        self,
+        java_vector_env: JavaObject,
+        envs: Sequence[gym.Env],
+        max_episode_steps: int = 0,
+    ):
+        """
+        A VecEnv backed by a Java VectorEnvironment, which steps every environment in the same tick, and resets finished
+        environments in the same tick as their last step.
+        :param java_vector_env: The VectorEnvironment.
+        :param envs: The Python side of each of its environments, in the same order, optionally inside observation and
+        action wrappers. They're only stepped through java_vector_env. The first is the template: it provides the spaces
+        and the encoding, and its wrappers are applied to every environment. The rest are for get_attr, set_attr and env_method.
+        :param max_episode_steps: Truncate episodes after this many steps, or 0 for no limit.
+        """
+        assert (
+            len(envs) == java_vector_env.size()
+        ), f"Expected {java_vector_env.size()} envs, got {len(envs)}"
+        self.java_vector_env = java_vector_env
+        self.envs = list(envs)
+        template = self.envs[0]
+        self.template = template
+        self.base: WrappedJavaEnv = template.unwrapped
+        self.wrappers = _wrappers(template)
+        self.max_episode_steps = max_episode_steps
+        java_vector_env.setTimeLimit(max_episode_steps)
+        self.observation_size: int = java_vector_env.getEncodedObservationSize()
+        self._actions: np.ndarray | None = None
+        super().__init__(
+            java_vector_env.size(), template.observation_space, template.action_space
+        )
+
+    def reset(self) -> VecEnvObs:
+        return self._stack(self._decode_all(self.java_vector_env.resetAll(), 0))
+
+    def step_async(self, actions: np.ndarray) -> None:
+        self._actions = actions
+
+    def step_wait(self) -> VecEnvStepReturn:
+        assert self._actions is not None, "step_async must be called before step_wait"
+        actions = b"".join(
+            self.base.encode_action(self._transform_action(action))
+            for action in self._actions
+        )
+        # See VectorStepTuple#encode
+        result = self.java_vector_env.stepAll(actions).encode()
+        n = self.num_envs
+        rewards = np.frombuffer(result, dtype="<f8", count=n).astype(np.float32)
+        terminated = np.frombuffer(result, dtype=np.uint8, count=n, offset=8 * n)
+        truncated = np.frombuffer(result, dtype=np.uint8, count=n, offset=9 * n)
+        terminated = terminated.astype(bool)
+        truncated = truncated.astype(bool)
+        observations = self._decode_all(result, 10 * n)
+        dones = terminated | truncated
+        infos: list[dict[str, Any]] = [{} for _ in range(n)]
+        # Finished environments were already reset, and their terminal observations follow the others in order
+        terminal_offset = 10 * n + n * self.observation_size
+        for k, i in enumerate(np.flatnonzero(dones)):
+            infos[i]["terminal_observation"] = self._decode(
+                result, terminal_offset + k * self.observation_size
+            )
+            infos[i]["TimeLimit.truncated"] = bool(truncated[i] and not terminated[i])
+        return self._stack(observations), rewards, dones, infos
+
+    def close(self) -> None:
+        self.java_vector_env.close()
+
+    def get_attr(self, attr_name: str, indices: VecEnvIndices = None) -> list[Any]:
+        return [getattr(self.envs[i], attr_name) for i in self._get_indices(indices)]
+
+    def set_attr(
+        self, attr_name: str, value: Any, indices: VecEnvIndices = None
+    ) -> None:
+        for i in self._get_indices(indices):
+            setattr(self.envs[i], attr_name, value)
+
+    def env_method(
+        self,
+        method_name: str,
+        *method_args,
+        indices: VecEnvIndices = None,
+        **method_kwargs,
+    ) -> list[Any]:
+        return [
+            getattr(self.envs[i], method_name)(*method_args, **method_kwargs)
+            for i in self._get_indices(indices)
+        ]
+
+    def env_is_wrapped(
+        self, wrapper_class: type[gym.Wrapper], indices: VecEnvIndices = None
+    ) -> list[bool]:
+        return [
+            any(
+                isinstance(wrapper, wrapper_class)
+                for wrapper in _wrappers(self.envs[i])
+            )
+            for i in self._get_indices(indices)
+        ]
+
+    def _decode(self, data: bytes, offset: int) -> Any:
+        return self._transform_observation(
+            self.base.decode_observation(
+                data[offset : offset + self.observation_size]
+            )
+        )
+
+    def _decode_all(self, data: bytes, offset: int) -> list[Any]:
+        return [
+            self._decode(data, offset + i * self.observation_size)
+            for i in range(self.num_envs)
+        ]
+
+    def _stack(self, observations: Sequence[Any]) -> VecEnvObs:
+        if isinstance(self.observation_space, Dict):
+            return {
+                key: np.stack([observation[key] for observation in observations])
+                for key in self.observation_space.keys()
+            }
+        return np.stack(observations)
+
+    def _transform_action(self, action: Any) -> Any:
+        for wrapper in self.wrappers:
+            if isinstance(wrapper, gym.ActionWrapper):
+                action = wrapper.action(action)
+        return action
+
+    def _transform_observation(self, observation: Any) -> Any:
+        for wrapper in reversed(self.wrappers):
+            if isinstance(wrapper, gym.ObservationWrapper):
+                observation = wrapper.observation(observation)
+        return observation
@@ -0,0 +1,42 @@
+from gymnasium.core import ActType, ObsType
+from py4j.java_gateway import JavaObject, JavaGateway
+
+from skycatdev.rlmc.space_schema import SpaceSchema
+from skycatdev.rlmc.wrappers.java_environment_wrapper import WrappedJavaEnv
+
+
+class WrappedSchemaEnv(WrappedJavaEnv):
+    """
+    Wraps any Java environment that describes its encoded actions and observations with Environment#getActionSchema and
+    Environment#getObservationSchema. The spaces are built from the schemas, and observations are read straight out of
+    the encoded bytes.
+    """
+
+    def __init__(self, java_env: JavaObject, java_gateway: JavaGateway):
+        super().__init__(java_env, java_gateway)
+        # Fetched once, decoding doesn't call Java
+        self.action_schema = SpaceSchema.from_java(self.java_env.getActionSchema())
+        self.observation_schema = SpaceSchema.from_java(
+            self.java_env.getObservationSchema()
+        )
+        self.action_space = self.action_schema.space()
+        self.observation_space = self.observation_schema.space()
+
+    def obs_to_python(self, java_obs: JavaObject) -> ObsType:
+        # The whole observation comes over in one call instead of walking java_obs
+        return self.decode_observation(self.java_env.getEncodedObservation())
+
+    def decode_observation(self, data: bytes) -> ObsType:
+        return self.observation_schema.decode(data)
+
+    def encode_action(self, action: ActType) -> bytes:
+        return self.action_schema.encode(action)
+
+    def action_to_java(self, action: ActType) -> bytes:
+        # Py4J sends bytes as a byte[], so this goes to Environment#step(byte[]) in one call
+        return self.encode_action(action)
+
+    def action_to_python(self, action: JavaObject) -> ActType:
+        raise NotImplementedError(
+            f"{type(self).__name__} can't convert Java actions, only encoded ones"
+        )
@@ -0,0 +1,127 @@
+import json
+
+import numpy as np
+import pytest
+from gymnasium.spaces import Box, Dict
+
+from skycatdev.rlmc.space_schema import SpaceSchema
+
+# Laid out like SpaceSchema#toJson would: a MultiDiscrete, then three interleaved records of two floats and a category,
+# then a scalar. Bounds are doubles, like Gson writes them.
+MIXED_SCHEMA = {
+    "size": 48,
+    "fields": [
+        {
+            "name": "blocks",
+            "dtype": "<i2",
+            "shape": [4],
+            "offset": 0,
+            "strides": [2],
+            "low": [0.0],
+            "high": [15.0],
+            "discrete": True,
+        },
+        {
+            "name": "entities",
+            "dtype": "<f4",
+            "shape": [3, 2],
+            "offset": 8,
+            "strides": [12, 4],
+            "low": [-1.0, 0.0],
+            "high": [1.0, 10.0],
+            "discrete": False,
+        },
+        {
+            "name": "kind",
+            "dtype": "<i4",
+            "shape": [3],
+            "offset": 16,
+            "strides": [12],
+            "low": [0.0],
+            "high": [5.0],
+            "discrete": True,
+        },
+        {
+            "name": "health",
+            "dtype": "<f4",
+            "shape": [],
+            "offset": 44,
+            "strides": [],
+            "low": [0.0],
+            "high": [20.0],
+            "discrete": False,
+        },
+    ],
+}
+
+SINGLE_SCHEMA = {
+    "size": 24,
+    "fields": [
+        {
+            "name": "heightmap",
+            "dtype": "<u2",
+            "shape": [3, 4],
+            "offset": 0,
+            "strides": [8, 2],
+            "low": [0.0],
+            "high": [384.0],
+            "discrete": False,
+        }
+    ],
+}
+
+
+@pytest.mark.parametrize("seed", range(10))
+def test_mixed_round_trip(seed: int):
+    schema = SpaceSchema(json.dumps(MIXED_SCHEMA))
+    space = schema.space()
+    assert isinstance(space, Dict)
+    space.seed(seed)
+    value = space.sample()
+    decoded = schema.decode(schema.encode(value))
+    assert space.contains(decoded)
+    for name in space.keys():
+        np.testing.assert_array_equal(decoded[name], value[name])
+
+
+def test_mixed_bytes_round_trip():
+    schema = SpaceSchema(json.dumps(MIXED_SCHEMA))
+    space = schema.space()
+    space.seed(0)
+    data = schema.encode(space.sample())
+    assert len(data) == schema.size
+    assert schema.encode(schema.decode(data)) == data
+
+
+def test_interleaved_fields_dont_overlap():
+    schema = SpaceSchema(json.dumps(MIXED_SCHEMA))
+    data = schema.encode(
+        {
+            "blocks": np.zeros(4),
+            "entities": np.full((3, 2), 0.5, dtype=np.float32),
+            "kind": np.array([1, 2, 3]),
+            "health": np.float32(20),
+        }
+    )
+    decoded = schema.decode(data)
+    np.testing.assert_array_equal(decoded["entities"], np.full((3, 2), 0.5))
+    np.testing.assert_array_equal(decoded["kind"], [1, 2, 3])
+    assert decoded["health"] == 20
+
+
+@pytest.mark.parametrize("seed", range(10))
+def test_single_field_round_trip(seed: int):
+    schema = SpaceSchema(json.dumps(SINGLE_SCHEMA))
+    space = schema.space()
+    assert isinstance(space, Box)
+    space.seed(seed)
+    value = space.sample()
+    decoded = schema.decode(schema.encode(value))
+    assert space.contains(decoded)
+    np.testing.assert_array_equal(decoded, value)
+
+
+def test_decode_rejects_wrong_size():
+    schema = SpaceSchema(json.dumps(MIXED_SCHEMA))
+    with pytest.raises(AssertionError):
+        schema.decode(bytes(schema.size - 1))
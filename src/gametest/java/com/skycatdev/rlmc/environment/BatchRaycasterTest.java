@@ -0,0 +1,115 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.SlabBlock;
+import net.minecraft.block.enums.SlabType;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.decoration.ArmorStandEntity;
+import net.minecraft.entity.projectile.ProjectileUtil;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.hit.EntityHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.RaycastContext;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Checks {@link BatchRaycaster} against the vanilla raycasts it replaces, the way {@link BasicPlayerObservation} used to cast each ray.
+ */
+public class BatchRaycasterTest implements FabricGameTest {
+    private static final int X_RAYCASTS = 12;
+    private static final int Y_RAYCASTS = 12;
+    private static final double MAX_DISTANCE = 10;
+    private static final double FOV_RAD = Math.PI / 2;
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void castMatchesVanilla(TestContext context) {
+        buildScene(context);
+        ServerPlayerEntity player = context.createMockCreativeServerPlayerInWorld();
+        BatchRaycaster raycaster = new BatchRaycaster();
+        Vec3d feet = context.getAbsolute(new Vec3d(4.5, 1, 3.5));
+        for (float yaw = 0; yaw < 360; yaw += 45) {
+            for (float pitch = -60; pitch <= 60; pitch += 30) {
+                player.refreshPositionAndAngles(feet.x, feet.y, feet.z, yaw, pitch);
+                assertMatchesVanilla(context, raycaster, player);
+            }
+        }
+        // The camera didn't move, so these come from the cache, which has to notice the changes
+        context.setBlockState(new BlockPos(3, 2, 7), Blocks.AIR);
+        context.spawnEntity(EntityType.ARMOR_STAND, new Vec3d(4.5, 1, 6.5));
+        assertMatchesVanilla(context, raycaster, player);
+        context.complete();
+    }
+
+    /**
+     * A floor, a wall with a gap, partial and see-through blocks, water, and some entities, one of them invisible.
+     */
+    static void buildScene(TestContext context) {
+        for (int x = 0; x < 8; x++) {
+            for (int z = 0; z < 8; z++) {
+                context.setBlockState(new BlockPos(x, 0, z), Blocks.STONE);
+            }
+            for (int y = 1; y < 4; y++) {
+                if (x != 5) {
+                    context.setBlockState(new BlockPos(x, y, 7), Blocks.STONE);
+                }
+            }
+        }
+        context.setBlockState(new BlockPos(1, 1, 1), Blocks.STONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.BOTTOM));
+        context.setBlockState(new BlockPos(2, 1, 6), Blocks.GLASS);
+        context.setBlockState(new BlockPos(6, 1, 2), Blocks.OAK_FENCE);
+        context.setBlockState(new BlockPos(1, 2, 4), Blocks.OAK_LEAVES);
+        context.setBlockState(new BlockPos(6, 1, 5), Blocks.WATER);
+        context.setBlockState(new BlockPos(3, 1, 1), Blocks.SHORT_GRASS);
+        context.spawnEntity(EntityType.ARMOR_STAND, new Vec3d(2.5, 1, 4.5));
+        context.spawnEntity(EntityType.PIG, new Vec3d(6.5, 1, 3.5));
+        ArmorStandEntity invisible = context.spawnEntity(EntityType.ARMOR_STAND, new Vec3d(4.5, 1, 1.5));
+        invisible.setInvisible(true);
+    }
+
+    private static void assertMatchesVanilla(TestContext context, BatchRaycaster raycaster, ServerPlayerEntity player) {
+        List<BlockHitInfo> blocks = new ArrayList<>();
+        List<@Nullable EntityHitResult> entities = new ArrayList<>();
+        raycaster.cast(player, X_RAYCASTS, Y_RAYCASTS, MAX_DISTANCE, FOV_RAD, blocks, entities);
+        ServerWorld world = player.getServerWorld();
+        double deltaAngleX = FOV_RAD / X_RAYCASTS;
+        double deltaAngleY = FOV_RAD / Y_RAYCASTS;
+        int ray = 0;
+        for (int i = 0; i < X_RAYCASTS; i++) {
+            for (int j = 0; j < Y_RAYCASTS; j++) {
+                Vec3d pos = player.getCameraPosVec(0);
+                Vec3d rot = player.getRotationVec(0).rotateX((float) (i * deltaAngleX - (FOV_RAD / 2)));
+                rot = rot.rotateY((float) (j * deltaAngleY - (FOV_RAD / 2)));
+                Vec3d max = pos.add(rot.x * MAX_DISTANCE, rot.y * MAX_DISTANCE, rot.z * MAX_DISTANCE);
+                String name = "ray " + ray + " (yaw " + player.getYaw() + ", pitch " + player.getPitch() + ")";
+
+                BlockHitResult blockHit = world.raycast(new RaycastContext(pos, max, RaycastContext.ShapeType.VISUAL, RaycastContext.FluidHandling.ANY, player));
+                BlockHitInfo expectedBlock = new BlockHitInfo(blockHit.getSide(), blockHit.getBlockPos(), world.getBlockState(blockHit.getBlockPos()));
+                context.assertEquals(blocks.get(ray), expectedBlock, "block hit of " + name);
+
+                Box box = player.getBoundingBox().stretch(rot.multiply(MAX_DISTANCE)).expand(1, 1, 1);
+                @Nullable EntityHitResult expectedEntity = ProjectileUtil.raycast(player, pos, max, box, entity -> !entity.isInvisibleTo(player), Math.pow(MAX_DISTANCE, 2));
+                @Nullable EntityHitResult entity = entities.get(ray);
+                context.assertEquals(getEntity(entity), getEntity(expectedEntity), "entity hit of " + name);
+                if (entity != null && expectedEntity != null) {
+                    context.assertEquals(entity.getPos(), expectedEntity.getPos(), "entity hit position of " + name);
+                }
+                ray++;
+            }
+        }
+    }
+
+    private static @Nullable Entity getEntity(@Nullable EntityHitResult hit) {
+        return hit == null ? null : hit.getEntity();
+    }
+}
@@ -0,0 +1,75 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Checks that observing off the server thread, the way {@link com.skycatdev.rlmc.ParallelPostTick} does, gives the same bytes as
+ * observing on it, as long as the chunks were looked up beforehand like {@link BasicPlayerEnvironment#prepareParallelPostTick()} does.
+ */
+public class ParallelObservationTest implements FabricGameTest {
+    private static final int X_RAYCASTS = 12;
+    private static final int Y_RAYCASTS = 12;
+    private static final double MAX_DISTANCE = 10;
+    private static final double FOV_RAD = Math.PI / 2;
+    private static final int HEIGHTMAP_WIDTH = 15;
+    private static final int VOXEL_SIZE = 9;
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void parallelMatchesSerial(TestContext context) {
+        BatchRaycasterTest.buildScene(context);
+        ServerPlayerEntity player = context.createMockCreativeServerPlayerInWorld();
+        Vec3d feet = context.getAbsolute(new Vec3d(4.5, 1, 3.5));
+        player.refreshPositionAndAngles(feet.x, feet.y, feet.z, 30, 15);
+
+        ChunkCache serialChunks = new ChunkCache();
+        updateChunks(serialChunks, player);
+        byte[] serial = observe(serialChunks, player);
+
+        ChunkCache parallelChunks = new ChunkCache();
+        updateChunks(parallelChunks, player);
+        EntityGrid.get(player.getServerWorld());
+        byte[] parallel;
+        try {
+            parallel = CompletableFuture.supplyAsync(() -> observe(parallelChunks, player), ForkJoinPool.commonPool()).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            throw new GameTestException("Observing off the server thread failed: " + e);
+        }
+        context.assertTrue(Arrays.equals(serial, parallel), "Expected observing off the server thread to match observing on it");
+        context.complete();
+    }
+
+    /**
+     * Look up the chunks like {@link BasicPlayerEnvironment} does. Call on the server thread.
+     */
+    private static void updateChunks(ChunkCache chunks, ServerPlayerEntity player) {
+        int reach = Math.max(BatchRaycaster.getReach(MAX_DISTANCE), Math.max(HEIGHTMAP_WIDTH, VOXEL_SIZE) / 2 + 1);
+        chunks.update(player.getServerWorld(), player.getBlockX(), player.getBlockZ(), reach);
+    }
+
+    /**
+     * Encode a frame like {@link BasicPlayerEnvironment#observe(boolean)} does.
+     */
+    private static byte[] observe(ChunkCache chunks, ServerPlayerEntity player) {
+        BasicPlayerObservation observation = BasicPlayerObservation.fromPlayer(new BatchRaycaster(), chunks, player, X_RAYCASTS, Y_RAYCASTS, MAX_DISTANCE, FOV_RAD, new FutureActionPack.History(), BlockPos.ORIGIN, BasicPlayerObservation.ALL_COMPONENTS);
+        ByteBuffer buffer = ByteBuffer.allocate(observation.getEncodedSize() + HeightmapObservation.getEncodedSize(HEIGHTMAP_WIDTH) + VoxelGridObservation.getEncodedSize(VOXEL_SIZE, VOXEL_SIZE, VOXEL_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        observation.encode(buffer);
+        HeightmapObservation.sample(chunks, player.getBlockPos(), HEIGHTMAP_WIDTH, null).encode(buffer);
+        VoxelGridObservation.sample(chunks, player.getBlockPos(), VOXEL_SIZE, VOXEL_SIZE, VOXEL_SIZE, null).encode(buffer);
+        return buffer.array();
+    }
+}
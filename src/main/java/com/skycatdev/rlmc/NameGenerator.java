@@ -36,6 +36,13 @@ public class NameGenerator {
         return name;
     }
 
+    /**
+     * Let a name be generated again, once the player using it has left.
+     */
+    public synchronized static void releaseName(String name) {
+        USED_NAMES.remove(name);
+    }
+
     protected synchronized static <T> T getRandom(List<T> list) {
         return list.get(RANDOM.nextInt(list.size()));
     }
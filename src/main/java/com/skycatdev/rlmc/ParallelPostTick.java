@@ -0,0 +1,90 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc;
+
+import com.skycatdev.rlmc.environment.Environment;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs the post-tick tasks of stepping environments at the same time, once every world has finished ticking. Experimental.<br>
+ * Only environments that {@link Environment#canPostTickInParallel()} are run in parallel - resets and anything else stay on the
+ * server thread. Side effects that aren't thread safe are deferred with
+ * {@link Environment#runAfterPostTick(Runnable)}, and run on the server thread once every environment is done.<br>
+ * The server thread waits for the post-ticks, so they can't ask it for anything, like chunks from the chunk manager.
+ * Environments look those up beforehand in {@link Environment#prepareParallelPostTick()}.
+ */
+public class ParallelPostTick {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("RLMC Post-Tick Thread " + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+    /**
+     * Environments waiting for the parallel post-tick phase. Only added to on the server thread, as worlds finish ticking.
+     */
+    private static final Queue<Environment<?, ?>> PENDING = new ConcurrentLinkedQueue<>();
+    private static volatile boolean enabled = false;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Post-tick the environments of a world that just ticked. The ones that can be are saved for {@link ParallelPostTick#runAll()}.
+     */
+    public static void postTick(Collection<Environment<?, ?>> environments) {
+        for (Environment<?, ?> environment : environments) {
+            if (enabled && environment.canPostTickInParallel()) {
+                PENDING.add(environment);
+            } else {
+                environment.postTick();
+            }
+        }
+    }
+
+    /**
+     * Post-tick every saved environment in parallel, then run their deferred side effects. Call on the server thread
+     * after every world has finished ticking.
+     */
+    public static void runAll() {
+        List<Environment<?, ?>> environments = new ArrayList<>();
+        @Nullable Environment<?, ?> environment;
+        while ((environment = PENDING.poll()) != null) {
+            environments.add(environment);
+        }
+        if (environments.isEmpty()) {
+            return;
+        }
+        if (environments.size() == 1) {
+            environments.getFirst().postTick();
+            return;
+        }
+        environments.forEach(Environment::prepareParallelPostTick);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(environments.size());
+        for (Environment<?, ?> pending : environments) {
+            tasks.add(POOL.submit(pending::postTickInParallel));
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                Rlmc.LOGGER.error("Failed to post-tick env \"{}\" in parallel.", environments.get(i).getUniqueEnvName(), e);
+            }
+        }
+        environments.forEach(Environment::runDeferred);
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ParallelPostTick.enabled = enabled;
+        Rlmc.LOGGER.info("Parallel post-ticking {}", enabled ? "enabled" : "disabled");
+    }
+}
@@ -0,0 +1,115 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc;
+
+import java.util.Arrays;
+import java.util.List;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.entity.EntityType;
+import net.minecraft.item.Item;
+import net.minecraft.registry.Registries;
+
+/**
+ * The dense ids observations use for block states, entity types and items. Only vanilla entries get ids - they're the same
+ * for every modpack. Anything else shares the id one past the last vanilla one.
+ * Ids are looked up by the raw id the game already keeps, so looking one up is an array read.<br>
+ * All three are in registry order (block states then in the order their block lists them), so ids only move when a
+ * game version adds or removes vanilla entries.<br>
+ * Built once at initialization and never changed, so it's safe to read from any thread.
+ */
+public final class RegistryIndex {
+    /**
+     * Dense block state ids, indexed by {@link Block#getRawIdFromState(BlockState)}. Modded states are {@link RegistryIndex#getBlockStateCount()}.
+     */
+    private final int[] blockStateIds;
+    /**
+     * Dense entity type ids, indexed by raw registry id. Modded types are {@link RegistryIndex#getEntityTypeCount()}.
+     */
+    private final int[] entityTypeIds;
+    /**
+     * Dense item ids, indexed by raw registry id. Modded items are {@link RegistryIndex#getItemCount()}.
+     */
+    private final int[] itemIds;
+    private final int blockStateCount;
+    private final int entityTypeCount;
+    private final int itemCount;
+
+    private RegistryIndex(int[] blockStateIds, int[] entityTypeIds, int[] itemIds, int blockStateCount, int entityTypeCount, int itemCount) {
+        this.blockStateIds = blockStateIds;
+        this.entityTypeIds = entityTypeIds;
+        this.itemIds = itemIds;
+        this.blockStateCount = blockStateCount;
+        this.entityTypeCount = entityTypeCount;
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Index what's registered now.
+     */
+    public static RegistryIndex build() {
+        List<BlockState> blockStates = Registries.BLOCK.stream()
+                .filter(block -> Registries.BLOCK.getId(block).getNamespace().equals("minecraft"))
+                .flatMap(block -> block.getStateManager().getStates().stream())
+                .toList();
+        int[] blockStateIds = new int[Block.STATE_IDS.size()];
+        Arrays.fill(blockStateIds, blockStates.size());
+        for (int i = 0; i < blockStates.size(); i++) {
+            blockStateIds[Block.getRawIdFromState(blockStates.get(i))] = i;
+        }
+
+        List<EntityType<?>> entityTypes = Registries.ENTITY_TYPE.stream()
+                .filter(type -> Registries.ENTITY_TYPE.getId(type).getNamespace().equals("minecraft"))
+                .toList();
+        int[] entityTypeIds = new int[Registries.ENTITY_TYPE.size()];
+        Arrays.fill(entityTypeIds, entityTypes.size());
+        for (int i = 0; i < entityTypes.size(); i++) {
+            entityTypeIds[Registries.ENTITY_TYPE.getRawId(entityTypes.get(i))] = i;
+        }
+
+        List<Item> items = Registries.ITEM.stream()
+                .filter(item -> Registries.ITEM.getId(item).getNamespace().equals("minecraft"))
+                .toList();
+        int[] itemIds = new int[Registries.ITEM.size()];
+        Arrays.fill(itemIds, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            itemIds[Registries.ITEM.getRawId(items.get(i))] = i;
+        }
+        return new RegistryIndex(blockStateIds, entityTypeIds, itemIds, blockStates.size(), entityTypes.size(), items.size());
+    }
+
+    /**
+     * @return The state's id, or {@link RegistryIndex#getBlockStateCount()} if it isn't vanilla.
+     */
+    public int getBlockStateId(BlockState state) {
+        int rawId = Block.getRawIdFromState(state);
+        return rawId >= 0 && rawId < blockStateIds.length ? blockStateIds[rawId] : blockStateCount;
+    }
+
+    /**
+     * @return The type's id, or {@link RegistryIndex#getEntityTypeCount()} if it isn't vanilla.
+     */
+    public int getEntityTypeId(EntityType<?> type) {
+        int rawId = Registries.ENTITY_TYPE.getRawId(type);
+        return rawId >= 0 && rawId < entityTypeIds.length ? entityTypeIds[rawId] : entityTypeCount;
+    }
+
+    /**
+     * @return The item's id, or {@link RegistryIndex#getItemCount()} if it isn't vanilla.
+     */
+    public int getItemId(Item item) {
+        int rawId = Registries.ITEM.getRawId(item);
+        return rawId >= 0 && rawId < itemIds.length ? itemIds[rawId] : itemCount;
+    }
+
+    public int getBlockStateCount() {
+        return blockStateCount;
+    }
+
+    public int getEntityTypeCount() {
+        return entityTypeCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+}
@@ -1,23 +1,28 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.skycatdev.rlmc.command.CommandManager;
+import com.skycatdev.rlmc.environment.AgentPool;
+import com.skycatdev.rlmc.environment.ArenaChunkGenerator;
+import com.skycatdev.rlmc.environment.EntityGrid;
 import com.skycatdev.rlmc.environment.Environment;
 import com.skycatdev.rlmc.network.DrawVectorPayload;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Consumer;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
-import net.minecraft.block.Block;
-import net.minecraft.block.BlockState;
-import net.minecraft.entity.EntityType;
-import net.minecraft.item.Item;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.minecraft.registry.Registries;
-import net.minecraft.state.StateManager;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.world.World;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,71 +36,110 @@ public class Rlmc implements ModInitializer {
     public static final Logger PYTHON_LOGGER = LoggerFactory.getLogger(MOD_ID + "_python");
     private static final GatewayServer GATEWAY_SERVER = new GatewayServer();
     private static final List<Environment<?, ?>> ENVIRONMENTS = new CopyOnWriteArrayList<>();
-    private static @Nullable BiMap<EntityType<?>, Integer> ENTITY_TYPE_MAP = null;
-    private static @Nullable BiMap<Item, Integer> ITEM_MAP = null;
-    private static @Nullable BiMap<BlockState, Integer> BLOCK_STATE_MAP = null;
+    /**
+     * Environments by the world they tick with. Environments that aren't in a world of their own tick with the overworld.
+     * Synchronize on this to change it, but not to read it.
+     */
+    private static final Map<RegistryKey<World>, Set<Environment<?, ?>>> ENVIRONMENTS_BY_WORLD = new ConcurrentHashMap<>();
+    /**
+     * The key each environment is under in {@link Rlmc#ENVIRONMENTS_BY_WORLD}.
+     */
+    private static final Map<Environment<?, ?>, RegistryKey<World>> ENVIRONMENT_WORLDS = new ConcurrentHashMap<>();
+    /**
+     * Built in {@link Rlmc#onInitialize()}, after vanilla's registries are filled.
+     */
+    private static volatile @Nullable RegistryIndex REGISTRY_INDEX = null;
     private static final Collection<Runnable> RUN_BEFORE_NEXT_TICK = new LinkedList<>();
+    /**
+     * Separates records in a batch sent to {@link Rlmc#pythonLogBatch(String)}.
+     */
+    public static final char PYTHON_LOG_RECORD_SEPARATOR = '\u001e';
+    /**
+     * Separates a record's level from its message in a batch sent to {@link Rlmc#pythonLogBatch(String)}.
+     */
+    public static final char PYTHON_LOG_LEVEL_SEPARATOR = '\u001f';
+    /**
+     * Batches of Python log records waiting to be logged, see {@link Rlmc#pythonLogBatch(String)}.
+     */
+    private static final BlockingQueue<String> PYTHON_LOG_BATCHES = new LinkedBlockingQueue<>();
 
     static {
         new Thread(() -> GATEWAY_SERVER.start(false), "RLMC Python Gateway Server Thread").start();
+        Thread pythonLogThread = new Thread(Rlmc::drainPythonLog, "RLMC Python Log Thread");
+        pythonLogThread.setDaemon(true);
+        pythonLogThread.start();
     }
 
     public static boolean addEnvironment(Environment<?, ?> environment) {
+        synchronized (ENVIRONMENTS_BY_WORLD) {
+            if (!ENVIRONMENT_WORLDS.containsKey(environment)) {
+                indexEnvironment(environment, World.OVERWORLD);
+            }
+        }
         return ENVIRONMENTS.add(environment);
     }
 
-    public static void forEachEnvironment(Consumer<? super Environment<?, ?>> consumer) {
-        ENVIRONMENTS.forEach(consumer);
+    /**
+     * @return The environments that tick with the world. Don't modify it.
+     */
+    public static Collection<Environment<?, ?>> getEnvironmentsIn(RegistryKey<World> world) {
+        return ENVIRONMENTS_BY_WORLD.getOrDefault(world, Set.of());
     }
 
-    public static List<Environment<?, ?>> getEnvironments() {
-        return ENVIRONMENTS;
+    /**
+     * Synchronize on {@link Rlmc#ENVIRONMENTS_BY_WORLD} first.
+     */
+    private static void indexEnvironment(Environment<?, ?> environment, RegistryKey<World> world) {
+        unindexEnvironment(environment);
+        ENVIRONMENT_WORLDS.put(environment, world);
+        ENVIRONMENTS_BY_WORLD.computeIfAbsent(world, key -> ConcurrentHashMap.newKeySet()).add(environment);
     }
 
-    @SuppressWarnings("unused") // Used by block_hit_result.py
-    public static BiMap<BlockState, Integer> getBlockStateMap() {
-        if (BLOCK_STATE_MAP == null) {
-            List<BlockState> blockStates = Registries.BLOCK.stream()
-                    .filter(block -> Registries.BLOCK.getId(block).getNamespace().equals("minecraft"))
-                    .map(Block::getStateManager)
-                    .map(StateManager::getStates)
-                    .flatMap(Collection::stream)
-                    .toList();
-            BLOCK_STATE_MAP = HashBiMap.create(blockStates.size());
-            for (int i = 0; i < blockStates.size(); i++) {
-                BLOCK_STATE_MAP.put(blockStates.get(i), i);
+    /**
+     * Change which world an environment ticks with. Does nothing if the environment hasn't been added or was removed.
+     *
+     * @param world The world, or {@code null} to tick with the overworld.
+     */
+    public static void setEnvironmentWorld(Environment<?, ?> environment, @Nullable RegistryKey<World> world) {
+        synchronized (ENVIRONMENTS_BY_WORLD) {
+            if (ENVIRONMENT_WORLDS.containsKey(environment)) {
+                indexEnvironment(environment, world == null ? World.OVERWORLD : world);
             }
         }
-        return BLOCK_STATE_MAP;
-    }
-
-    @SuppressWarnings("unused") // Used by entity_hit_result.py
-    public static BiMap<EntityType<?>, Integer> getEntityTypeMap() {
-        if (ENTITY_TYPE_MAP == null) {
-            List<EntityType<?>> entityTypes = Registries.ENTITY_TYPE.stream()
-                    .filter(type -> Registries.ENTITY_TYPE.getId(type).getNamespace().equals("minecraft"))
-                    .sorted(Comparator.comparing(o -> Registries.ENTITY_TYPE.getId(o).getPath()))
-                    .toList();
-            ENTITY_TYPE_MAP = HashBiMap.create(entityTypes.size());
-            for (int i = 0; i < entityTypes.size(); i++) {
-                ENTITY_TYPE_MAP.put(entityTypes.get(i), i);
+    }
+
+    /**
+     * Synchronize on {@link Rlmc#ENVIRONMENTS_BY_WORLD} first.
+     */
+    private static void unindexEnvironment(Environment<?, ?> environment) {
+        @Nullable RegistryKey<World> world = ENVIRONMENT_WORLDS.remove(environment);
+        if (world != null) {
+            Set<Environment<?, ?>> environments = ENVIRONMENTS_BY_WORLD.get(world);
+            environments.remove(environment);
+            if (environments.isEmpty()) {
+                ENVIRONMENTS_BY_WORLD.remove(world);
             }
         }
-        return ENTITY_TYPE_MAP;
-    }
-
-    public static BiMap<Item, Integer> getItemMap() {
-        if (ITEM_MAP == null) {
-            List<Item> items = Registries.ITEM.stream()
-                    .filter(item -> Registries.ITEM.getId(item).getNamespace().equals("minecraft"))
-                    .sorted(Comparator.comparing(o -> Registries.ITEM.getId(o).getPath()))
-                    .toList();
-            ITEM_MAP = HashBiMap.create(items.size());
-            for (int i = 0; i < items.size(); i++) {
-                ITEM_MAP.put(items.get(i), i);
-            }
+    }
+
+    public static void forEachEnvironment(Consumer<? super Environment<?, ?>> consumer) {
+        ENVIRONMENTS.forEach(consumer);
+    }
+
+    public static List<Environment<?, ?>> getEnvironments() {
+        return ENVIRONMENTS;
+    }
+
+    /**
+     * @return The ids observations use for registry entries.
+     * @throws IllegalStateException If called before the mod is initialized.
+     */
+    public static RegistryIndex getRegistryIndex() {
+        @Nullable RegistryIndex index = REGISTRY_INDEX;
+        if (index == null) {
+            throw new IllegalStateException("The registry index isn't built until RLMC is initialized");
         }
-        return ITEM_MAP;
+        return index;
     }
 
     public static PythonEntrypoint getPythonEntrypoint() {
@@ -115,7 +159,43 @@ public class Rlmc implements ModInitializer {
         }
     }
 
-    @SuppressWarnings("unused") // Used by entrypoint.py
+    /**
+     * Log records that Python batched up, without waiting for them to be logged. Records are separated by
+     * {@link Rlmc#PYTHON_LOG_RECORD_SEPARATOR}, and each is a level, {@link Rlmc#PYTHON_LOG_LEVEL_SEPARATOR}, then the message.
+     */
+    @SuppressWarnings("unused") // Used by log_channel.py
+    public static void pythonLogBatch(String batch) {
+        PYTHON_LOG_BATCHES.add(batch);
+    }
+
+    /**
+     * Log the batches sent to {@link Rlmc#pythonLogBatch(String)} as they come in. Runs forever on its own thread.
+     */
+    private static void drainPythonLog() {
+        while (true) {
+            String batch;
+            try {
+                batch = PYTHON_LOG_BATCHES.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int start = 0;
+            while (start < batch.length()) {
+                int end = batch.indexOf(PYTHON_LOG_RECORD_SEPARATOR, start);
+                if (end == -1) {
+                    end = batch.length();
+                }
+                int levelEnd = batch.indexOf(PYTHON_LOG_LEVEL_SEPARATOR, start);
+                if (levelEnd == -1 || levelEnd > end) {
+                    pythonLog("INFO", batch.substring(start, end));
+                } else {
+                    pythonLog(batch.substring(start, levelEnd), batch.substring(levelEnd + 1, end));
+                }
+                start = end + 1;
+            }
+        }
+    }
+
     public static void pythonLog(String level, String message) {
         switch (level.toUpperCase()) {
             case "DEBUG":
@@ -133,13 +213,22 @@ public class Rlmc implements ModInitializer {
     }
 
     public static boolean removeEnvironment(Environment<?, ?> environment) {
+        synchronized (ENVIRONMENTS_BY_WORLD) {
+            unindexEnvironment(environment);
+        }
         return ENVIRONMENTS.remove(environment);
     }
 
     @Override
     public void onInitialize() {
+        REGISTRY_INDEX = RegistryIndex.build();
         PayloadTypeRegistry.playS2C().register(DrawVectorPayload.PACKET_ID, DrawVectorPayload.CODEC);
         CommandRegistrationCallback.EVENT.register(new CommandManager());
+        ServerPlayConnectionEvents.JOIN.register(AgentPool::onPlayerJoin);
+        Registry.register(Registries.CHUNK_GENERATOR, ArenaChunkGenerator.ID, ArenaChunkGenerator.CODEC);
+        ServerEntityEvents.ENTITY_LOAD.register(EntityGrid::onEntityChanged);
+        ServerEntityEvents.ENTITY_UNLOAD.register(EntityGrid::onEntityChanged);
+        ServerWorldEvents.UNLOAD.register(EntityGrid::onWorldUnload);
         GATEWAY_SERVER.addListener(new GatewayServerListener() {
             @Override
             public void connectionError(Exception e) {
@@ -0,0 +1,54 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc;
+
+import com.skycatdev.rlmc.environment.Environment;
+import java.util.List;
+
+/**
+ * Runs the server as fast as the environments allow. While it's on and every environment is {@link Environment#waitingForTick()},
+ * the server skips the wait between ticks, like {@code /tick sprint}. Otherwise, it ticks at the normal rate.
+ */
+public class TurboMode {
+    private static volatile boolean enabled = false;
+    /**
+     * The fastest the server will tick while in turbo mode, or 0 for no limit.
+     */
+    private static volatile int maxTps = 0;
+
+    public static int getMaxTps() {
+        return maxTps;
+    }
+
+    /**
+     * @return The minimum time between the start of two ticks while in turbo mode.
+     */
+    public static long getNanosPerTick() {
+        int maxTps = TurboMode.maxTps;
+        return maxTps > 0 ? 1_000_000_000L / maxTps : 0;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return {@code true} if the next tick should start right away.
+     */
+    public static boolean isReady() {
+        if (!enabled) {
+            return false;
+        }
+        List<Environment<?, ?>> environments = Rlmc.getEnvironments();
+        return !environments.isEmpty() && environments.stream().allMatch(Environment::waitingForTick);
+    }
+
+    /**
+     * @param enabled Whether to tick as fast as the environments allow.
+     * @param maxTps  The fastest the server will tick, or 0 for no limit.
+     */
+    public static void set(boolean enabled, int maxTps) {
+        TurboMode.maxTps = maxTps;
+        TurboMode.enabled = enabled;
+        Rlmc.LOGGER.info("Turbo mode {}{}", enabled ? "enabled" : "disabled", enabled && maxTps > 0 ? " at up to " + maxTps + " TPS" : "");
+    }
+}
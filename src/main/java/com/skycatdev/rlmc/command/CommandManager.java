@@ -10,7 +10,9 @@ import com.mojang.brigadier.arguments.DoubleArgumentType;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.tree.CommandNode;
+import com.skycatdev.rlmc.ParallelPostTick;
 import com.skycatdev.rlmc.Rlmc;
+import com.skycatdev.rlmc.TurboMode;
 import com.skycatdev.rlmc.environment.*;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
@@ -124,6 +126,56 @@ public class CommandManager implements CommandRegistrationCallback {
         var monitorArg = argument("monitor", BoolArgumentType.bool())
                 .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setUseMonitor(BoolArgumentType.getBool(context, "monitor")))
                 .build();
+        var sharedMemory = literal("sharedMemory")
+                .build();
+        var sharedMemoryArg = argument("sharedMemory", BoolArgumentType.bool())
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setUseSharedMemory(BoolArgumentType.getBool(context, "sharedMemory")))
+                .build();
+        var prefetch = literal("prefetch")
+                .build();
+        var prefetchArg = argument("prefetch", BoolArgumentType.bool())
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setPrefetchWorlds(BoolArgumentType.getBool(context, "prefetch")))
+                .build();
+        var sharedWorld = literal("sharedWorld")
+                .build();
+        var sharedWorldArg = argument("sharedWorld", BoolArgumentType.bool())
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setShareWorld(BoolArgumentType.getBool(context, "sharedWorld")))
+                .build();
+        var generator = literal("generator")
+                .build();
+        var generatorOverworld = literal("overworld")
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setArenaLayout(null))
+                .build();
+        var heightmap = literal("heightmap")
+                .build();
+        var heightmapArg = argument("heightmap", IntegerArgumentType.integer(0))
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setHeightmapWidth(IntegerArgumentType.getInteger(context, "heightmap")))
+                .build();
+        var voxels = literal("voxels")
+                .build();
+        var voxelsArg = argument("voxels", IntegerArgumentType.integer(0))
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setVoxelSize(IntegerArgumentType.getInteger(context, "voxels")))
+                .build();
+        var rememberedActions = literal("rememberedActions")
+                .build();
+        var rememberedActionsArg = argument("rememberedActions", IntegerArgumentType.integer(0))
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setRememberedActions(IntegerArgumentType.getInteger(context, "rememberedActions")))
+                .build();
+        var observe = literal("observe")
+                .build();
+        var observeDefault = literal("default")
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setObservationComponents(null))
+                .build();
+        var environments = literal("environments")
+                .build();
+        var environmentsArg = argument("environments", IntegerArgumentType.integer(1))
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setEnvironmentCount(IntegerArgumentType.getInteger(context, "environments")))
+                .build();
+        var frameSkip = literal("frameSkip")
+                .build();
+        var frameSkipArg = argument("frameSkip", IntegerArgumentType.integer(1))
+                .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setFrameSkip(IntegerArgumentType.getInteger(context, "frameSkip")))
+                .build();
         var frameStack = literal("frameStack")
                 .build();
         var frameStackRemove = literal("remove")
@@ -174,6 +226,36 @@ public class CommandManager implements CommandRegistrationCallback {
             vfCoef.addChild(vfCoefArg);
         base.addChild(monitor);
             monitor.addChild(monitorArg);
+        base.addChild(sharedMemory);
+            sharedMemory.addChild(sharedMemoryArg);
+        base.addChild(prefetch);
+            prefetch.addChild(prefetchArg);
+        base.addChild(sharedWorld);
+            sharedWorld.addChild(sharedWorldArg);
+        base.addChild(generator);
+            generator.addChild(generatorOverworld);
+            for (ArenaChunkGenerator.Layout layout : ArenaChunkGenerator.Layout.values()) {
+                generator.addChild(literal(layout.asString())
+                        .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$setArenaLayout(layout))
+                        .build());
+            }
+        base.addChild(heightmap);
+            heightmap.addChild(heightmapArg);
+        base.addChild(voxels);
+            voxels.addChild(voxelsArg);
+        base.addChild(rememberedActions);
+            rememberedActions.addChild(rememberedActionsArg);
+        base.addChild(observe);
+            observe.addChild(observeDefault);
+            for (ObservationComponent component : ObservationComponent.values()) {
+                observe.addChild(literal(component.asString())
+                        .redirect(base, context -> (ServerCommandSource) ((EnvironmentSettingsBuilder)context.getSource()).rlmc$addObservationComponent(component))
+                        .build());
+            }
+        base.addChild(environments);
+            environments.addChild(environmentsArg);
+        base.addChild(frameSkip);
+            frameSkip.addChild(frameSkipArg);
         base.addChild(frameStack);
             frameStack.addChild(frameStackArg);
             frameStack.addChild(frameStackRemove);
@@ -238,9 +320,53 @@ public class CommandManager implements CommandRegistrationCallback {
                 })
                 .build();
 
+        var turbo = literal("turbo")
+                .build();
+        var turboEnabled = argument("enabled", BoolArgumentType.bool())
+                .executes(context -> {
+                    TurboMode.set(BoolArgumentType.getBool(context, "enabled"), 0);
+                    context.getSource().sendFeedback(() -> Text.literal("Turbo mode " + (TurboMode.isEnabled() ? "enabled" : "disabled")), true);
+                    return Command.SINGLE_SUCCESS;
+                })
+                .build();
+        var turboMaxTps = argument("maxTps", IntegerArgumentType.integer(1))
+                .executes(context -> {
+                    TurboMode.set(BoolArgumentType.getBool(context, "enabled"), IntegerArgumentType.getInteger(context, "maxTps"));
+                    context.getSource().sendFeedback(() -> Text.literal("Turbo mode " + (TurboMode.isEnabled() ? "enabled" : "disabled")), true);
+                    return Command.SINGLE_SUCCESS;
+                })
+                .build();
+        var pool = literal("pool")
+                .build();
+        var poolSize = argument("size", IntegerArgumentType.integer(0))
+                .executes(context -> {
+                    AgentPool.setSize(IntegerArgumentType.getInteger(context, "size"));
+                    context.getSource().sendFeedback(() -> Text.literal("Keeping " + AgentPool.getSize() + " agents and worlds ready"), true);
+                    return Command.SINGLE_SUCCESS;
+                })
+                .build();
+        var parallelPostTick = literal("parallelPostTick")
+                .build();
+        var parallelPostTickEnabled = argument("enabled", BoolArgumentType.bool())
+                .executes(context -> {
+                    ParallelPostTick.setEnabled(BoolArgumentType.getBool(context, "enabled"));
+                    context.getSource().sendFeedback(() -> Text.literal("Parallel post-ticking " + (ParallelPostTick.isEnabled() ? "enabled" : "disabled")), true);
+                    return Command.SINGLE_SUCCESS;
+                })
+                .build();
 
         // spotless:off
         //@formatter:off
+        // /environment pool <size>
+        environment.addChild(pool);
+            pool.addChild(poolSize);
+        // /environment parallelPostTick <enabled>
+        environment.addChild(parallelPostTick);
+            parallelPostTick.addChild(parallelPostTickEnabled);
+        // /environment turbo <enabled> [maxTps]
+        environment.addChild(turbo);
+            turbo.addChild(turboEnabled);
+                turboEnabled.addChild(turboMaxTps);
         // /environment <environment> <environment-specific settings> <mode> <mode-specific settings>
         var settings = withEnvironmentAndExecutionSettings(environment);
             settings.addChild(fightEnemy);
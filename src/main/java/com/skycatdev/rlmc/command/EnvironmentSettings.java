@@ -1,15 +1,41 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.command;
 
+import com.skycatdev.rlmc.environment.ArenaChunkGenerator;
+import com.skycatdev.rlmc.environment.ObservationComponent;
+import java.util.EnumSet;
+import java.util.Set;
+import org.jetbrains.annotations.Nullable;
+
 public class EnvironmentSettings {
     protected boolean useMonitor = false;
     protected int timeLimit = 0;
     protected int frameStack = 0;
+    protected boolean useSharedMemory = false;
+    protected int environmentCount = 1;
+    protected int frameSkip = 1;
+    protected boolean prefetchWorlds = false;
+    protected @Nullable ArenaChunkGenerator.Layout arenaLayout = null;
+    protected boolean shareWorld = false;
+    protected int heightmapWidth = 0;
+    protected int voxelSize = 0;
+    protected int rememberedActions = 0;
+    protected @Nullable Set<ObservationComponent> observationComponents = null;
 
-    public EnvironmentSettings(boolean useMonitor, int timeLimit, int frameStack) {
+    public EnvironmentSettings(boolean useMonitor, int timeLimit, int frameStack, boolean useSharedMemory, int environmentCount, int frameSkip, boolean prefetchWorlds, @Nullable ArenaChunkGenerator.Layout arenaLayout, boolean shareWorld, int heightmapWidth, int voxelSize, int rememberedActions, @Nullable Set<ObservationComponent> observationComponents) {
         this.useMonitor = useMonitor;
         this.timeLimit = timeLimit;
         this.frameStack = frameStack;
+        this.useSharedMemory = useSharedMemory;
+        this.environmentCount = environmentCount;
+        this.frameSkip = frameSkip;
+        this.prefetchWorlds = prefetchWorlds;
+        this.arenaLayout = arenaLayout;
+        this.shareWorld = shareWorld;
+        this.heightmapWidth = heightmapWidth;
+        this.voxelSize = voxelSize;
+        this.rememberedActions = rememberedActions;
+        this.observationComponents = observationComponents == null ? null : EnumSet.copyOf(observationComponents);
     }
 
     @SuppressWarnings("unused") // Used by entrypoint.py
@@ -22,8 +48,80 @@ public class EnvironmentSettings {
         return timeLimit;
     }
 
-    @SuppressWarnings("unused") // Used by entrypoint.py
+    /**
+     * @return How many of the most recent frames each observation holds, see {@link com.skycatdev.rlmc.environment.BasicPlayerEnvironment#getEncodedObservation()}.
+     */
     public int getFrameStack() {
         return frameStack;
     }
+
+    /**
+     * @return The arena to generate training worlds with, or {@code null} to generate them like the overworld.
+     */
+    public @Nullable ArenaChunkGenerator.Layout getArenaLayout() {
+        return arenaLayout;
+    }
+
+    /**
+     * @return How many environments to train with at once.
+     */
+    @SuppressWarnings("unused") // Used by entrypoint.py
+    public int getEnvironmentCount() {
+        return environmentCount;
+    }
+
+    /**
+     * @return How many blocks wide the heightmap around the agent is, or 0 to not observe it. See {@link com.skycatdev.rlmc.environment.HeightmapObservation}.
+     */
+    public int getHeightmapWidth() {
+        return heightmapWidth;
+    }
+
+    /**
+     * @return The parts of the observation to compute and send, or {@code null} to use the environment's default.
+     */
+    public @Nullable Set<ObservationComponent> getObservationComponents() {
+        return observationComponents;
+    }
+
+    /**
+     * @return How many blocks wide the cube of blocks around the agent is, or 0 to not observe it. See {@link com.skycatdev.rlmc.environment.VoxelGridObservation}.
+     */
+    public int getVoxelSize() {
+        return voxelSize;
+    }
+
+    /**
+     * @return How many of the agent's most recent actions to observe, or 0 to not observe them. See {@link com.skycatdev.rlmc.environment.FutureActionPack.History#getRecentActions()}.
+     */
+    public int getRememberedActions() {
+        return rememberedActions;
+    }
+
+    /**
+     * @return How many ticks each action is repeated for.
+     */
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    /**
+     * @return Whether to keep the next world generating in the background, so that resets that need a new world don't wait for it.
+     */
+    public boolean shouldPrefetchWorlds() {
+        return prefetchWorlds;
+    }
+
+    /**
+     * @return Whether to put the environment in a cell of a world shared with other environments, instead of giving it its own world.
+     * Prefetching and pooled worlds aren't used when sharing. Only used with an {@link EnvironmentSettings#getArenaLayout()}, whose generator walls off the cells.
+     */
+    public boolean shouldShareWorld() {
+        return shareWorld;
+    }
+
+    @SuppressWarnings("unused") // Used by entrypoint.py
+    public boolean shouldUseSharedMemory() {
+        return useSharedMemory;
+    }
 }
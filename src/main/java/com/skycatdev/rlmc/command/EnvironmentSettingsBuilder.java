@@ -1,18 +1,51 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.command;
 
+import com.skycatdev.rlmc.environment.ArenaChunkGenerator;
+import com.skycatdev.rlmc.environment.ObservationComponent;
+import java.util.EnumSet;
+import java.util.Set;
 import org.checkerframework.common.value.qual.IntRange;
 import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.Nullable;
 
 public interface EnvironmentSettingsBuilder {
     default EnvironmentSettings rlmc$buildEnvironmentSettings() {
-        return new EnvironmentSettings(rlmc$isUsingMonitor(), rlmc$getTimeLimit(), rlmc$getFrameStack());
+        return new EnvironmentSettings(rlmc$isUsingMonitor(), rlmc$getTimeLimit(), rlmc$getFrameStack(), rlmc$isUsingSharedMemory(), rlmc$getEnvironmentCount(), rlmc$getFrameSkip(), rlmc$isPrefetchingWorlds(), rlmc$getArenaLayout(), rlmc$isSharingWorld(), rlmc$getHeightmapWidth(), rlmc$getVoxelSize(), rlmc$getRememberedActions(), rlmc$getObservationComponents());
     }
 
+    @Nullable ArenaChunkGenerator.Layout rlmc$getArenaLayout();
+
+    /**
+     * Observe a component, in addition to the ones already chosen. If the environment's default was being used, it's replaced.
+     *
+     * @param component The component to observe
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    default EnvironmentSettingsBuilder rlmc$addObservationComponent(ObservationComponent component) {
+        @Nullable Set<ObservationComponent> components = rlmc$getObservationComponents();
+        Set<ObservationComponent> newComponents = components == null ? EnumSet.noneOf(ObservationComponent.class) : EnumSet.copyOf(components);
+        newComponents.add(component);
+        return rlmc$setObservationComponents(newComponents);
+    }
+
+    @Nullable Set<ObservationComponent> rlmc$getObservationComponents();
+
+    @IntRange(from = 1) int rlmc$getEnvironmentCount();
+
+    @IntRange(from = 1) int rlmc$getFrameSkip();
+
     @IntRange(from = 1) int rlmc$getFrameStack();
 
+    @IntRange(from = 0) int rlmc$getHeightmapWidth();
+
+    @IntRange(from = 0) int rlmc$getRememberedActions();
+
     @IntRange(from = 0) int rlmc$getTimeLimit();
 
+    @IntRange(from = 0) int rlmc$getVoxelSize();
+
     default boolean rlmc$isFrameStacking() {
         return rlmc$getFrameStack() > 1;
     }
@@ -21,8 +54,14 @@ public interface EnvironmentSettingsBuilder {
         return rlmc$getTimeLimit() > 0;
     };
 
+    boolean rlmc$isPrefetchingWorlds();
+
+    boolean rlmc$isSharingWorld();
+
     boolean rlmc$isUsingMonitor();
 
+    boolean rlmc$isUsingSharedMemory();
+
     /**
      * Remove frame stacking by setting it to 1.
      *
@@ -45,6 +84,33 @@ public interface EnvironmentSettingsBuilder {
         return this;
     }
 
+    /**
+     * Set which arena to generate training worlds with.
+     *
+     * @param arenaLayout The layout to use, or {@code null} to generate worlds like the overworld
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setArenaLayout(@Nullable ArenaChunkGenerator.Layout arenaLayout);
+
+    /**
+     * Set how many environments to train with at once. 1 means no vectorization.
+     *
+     * @param environmentCount Number of environments
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setEnvironmentCount(@IntRange(from = 1) int environmentCount);
+
+    /**
+     * Set how many ticks to repeat each action for. 1 means every action lasts one tick.
+     *
+     * @param frameSkip Number of ticks per step
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setFrameSkip(@IntRange(from = 1) int frameSkip);
+
     /**
      * Set how many frames to stack. 1 means no frame stacking.
      *
@@ -54,6 +120,42 @@ public interface EnvironmentSettingsBuilder {
     @Contract("_->this")
     EnvironmentSettingsBuilder rlmc$setFrameStack(@IntRange(from = 1) int frameStack);
 
+    /**
+     * Set how many blocks wide the heightmap observed around the agent is. 0 means no heightmap.
+     *
+     * @param heightmapWidth Width of the heightmap
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setHeightmapWidth(@IntRange(from = 0) int heightmapWidth);
+
+    /**
+     * Set which parts of the observation to compute and send.
+     *
+     * @param observationComponents The components to observe, or {@code null} to use the environment's default
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setObservationComponents(@Nullable Set<ObservationComponent> observationComponents);
+
+    /**
+     * Set whether to generate the next world in the background before it's needed
+     *
+     * @param prefetchWorlds whether to generate the next world ahead of time
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setPrefetchWorlds(boolean prefetchWorlds);
+
+    /**
+     * Set whether to put the environment in a cell of a world shared with other environments. Only used with an arena layout.
+     *
+     * @param shareWorld whether to share a world with other environments
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setShareWorld(boolean shareWorld);
+
     /**
      * Set the time limit.
      *
@@ -63,6 +165,24 @@ public interface EnvironmentSettingsBuilder {
     @Contract("_->this")
     EnvironmentSettingsBuilder rlmc$setTimeLimit(@IntRange(from = 0) int timeLimit);
 
+    /**
+     * Set how many of the agent's most recent actions are observed. 0 means none.
+     *
+     * @param rememberedActions Number of actions
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setRememberedActions(@IntRange(from = 0) int rememberedActions);
+
+    /**
+     * Set how many blocks wide the cube of blocks observed around the agent is. 0 means no cube.
+     *
+     * @param voxelSize Width of the cube
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setVoxelSize(@IntRange(from = 0) int voxelSize);
+
     /**
      * Set whether to wrap the environment in a Monitor
      *
@@ -72,6 +192,15 @@ public interface EnvironmentSettingsBuilder {
     @Contract("_->this")
     EnvironmentSettingsBuilder rlmc$setUseMonitor(boolean useMonitor);
 
+    /**
+     * Set whether to step and reset through shared memory instead of Py4J
+     *
+     * @param useSharedMemory whether to step and reset through shared memory
+     * @return {@code this}
+     */
+    @Contract("_->this")
+    EnvironmentSettingsBuilder rlmc$setUseSharedMemory(boolean useSharedMemory);
+
     /**
      * Wrap the environment in a Monitor
      *
@@ -0,0 +1,212 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import carpet.patches.EntityPlayerMPFake;
+import com.skycatdev.rlmc.NameGenerator;
+import com.skycatdev.rlmc.Rlmc;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import net.fabricmc.fabric.api.networking.v1.PacketSender;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.GameMode;
+import net.minecraft.world.World;
+import net.minecraft.world.gen.chunk.ChunkGenerator;
+import org.checkerframework.common.value.qual.IntRange;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.fantasy.RuntimeWorldHandle;
+
+/**
+ * Keeps agents and runtime worlds ready ahead of time, so that making another environment doesn't have to wait for them.
+ * It's topped back up a little every tick. Worlds are made with whichever chunk generator was asked for most recently.<br>
+ * Pooled agents wait invulnerable in spectator mode at the overworld spawn, so nothing can hurt them before they're taken.
+ */
+public class AgentPool {
+    /**
+     * Agents that have been spawned but haven't joined yet, by name.
+     */
+    private static final Map<String, CompletableFuture<ServerPlayerEntity>> JOINING = new ConcurrentHashMap<>();
+    /**
+     * Synchronize on this first.
+     */
+    private static final Queue<ServerPlayerEntity> AGENTS = new ArrayDeque<>();
+    /**
+     * Synchronize on {@link AgentPool#AGENTS} first.
+     */
+    private static final Queue<RuntimeWorldHandle> WORLDS = new ArrayDeque<>();
+    private static volatile int size = 0;
+    /**
+     * Agents requested for the pool that haven't joined yet. Synchronize on {@link AgentPool#AGENTS} first.
+     */
+    private static int pendingAgents = 0;
+    /**
+     * The generator pooled worlds are made with. Synchronize on {@link AgentPool#AGENTS} first.
+     */
+    private static @Nullable ChunkGenerator generator;
+
+    /**
+     * Spawn a fake player to be an agent.
+     *
+     * @return A future that completes once the player has joined, or {@code null} if it couldn't be spawned.
+     */
+    public static @Nullable CompletableFuture<ServerPlayerEntity> createPlayerAgent(String name, MinecraftServer server, Vec3d pos, double yaw, double pitch, RegistryKey<World> world, GameMode gamemode, boolean flying) {
+        CompletableFuture<ServerPlayerEntity> future = new CompletableFuture<>();
+        JOINING.put(name, future);
+        if (EntityPlayerMPFake.createFake(name, server, pos, yaw, pitch, world, gamemode, flying)) {
+            return future.thenApply(player -> {
+                ((PlayerAgentCandidate) player).rlmc$markAsAgent();
+                return player;
+            });
+        }
+        JOINING.remove(name);
+        return null;
+    }
+
+    /**
+     * Spawn a fake player to wait in the pool. See {@link AgentPool#takeAgent(MinecraftServer)} for how it's made ready to use.
+     */
+    private static @Nullable CompletableFuture<ServerPlayerEntity> createPooledAgent(MinecraftServer server) {
+        @Nullable CompletableFuture<ServerPlayerEntity> future = createPlayerAgent(NameGenerator.newName(server.getPlayerManager().getPlayerList()), server, getWaitingPos(server), 0, 0, server.getOverworld().getRegistryKey(), GameMode.SPECTATOR, true);
+        return future == null ? null : future.thenApply(player -> {
+            player.setInvulnerable(true);
+            return player;
+        });
+    }
+
+    /**
+     * Kill an agent that's leaving the pool without being used, and free its name.
+     */
+    private static void discardAgent(ServerPlayerEntity agent) {
+        ((PlayerAgentCandidate) agent).rlmc$forceKill();
+        NameGenerator.releaseName(agent.getGameProfile().getName());
+    }
+
+    public static int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Where agents wait before they're used. Above ground, so that they don't suffocate.
+     */
+    private static Vec3d getWaitingPos(MinecraftServer server) {
+        return Vec3d.ofBottomCenter(server.getOverworld().getSpawnPos());
+    }
+
+    /**
+     * Completes the future for an agent that was waiting to join. Registered to {@link net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents#JOIN}.
+     */
+    public static void onPlayerJoin(ServerPlayNetworkHandler handler, PacketSender sender, MinecraftServer server) {
+        @Nullable CompletableFuture<ServerPlayerEntity> future = JOINING.remove(handler.getPlayer().getGameProfile().getName());
+        if (future != null) {
+            future.complete(handler.getPlayer());
+        }
+    }
+
+    /**
+     * Undo the waiting state of a pooled agent, and heal it in case anything got to it anyway.
+     */
+    private static void prepareAgent(ServerPlayerEntity agent) {
+        agent.setInvulnerable(false);
+        agent.changeGameMode(GameMode.SURVIVAL);
+        agent.getAbilities().flying = false;
+        agent.sendAbilitiesUpdate();
+        agent.clearStatusEffects();
+        agent.extinguish();
+        agent.setFrozenTicks(0);
+        agent.setAir(agent.getMaxAir());
+        agent.fallDistance = 0;
+        agent.setVelocity(Vec3d.ZERO);
+        agent.setHealth(agent.getMaxHealth());
+        agent.getHungerManager().setFoodLevel(20);
+        agent.getHungerManager().setSaturationLevel(5);
+    }
+
+    /**
+     * Set how many agents and worlds to keep ready. Extras are removed on the next tick.
+     */
+    public static void setSize(@IntRange(from = 0) int size) {
+        AgentPool.size = size;
+    }
+
+    /**
+     * Take a ready agent, or spawn a new one if there aren't any. Call on the server thread.
+     *
+     * @return A future that completes with the agent once it has joined, or {@code null} if it couldn't be spawned.
+     */
+    public static @Nullable CompletableFuture<ServerPlayerEntity> takeAgent(MinecraftServer server) {
+        @Nullable ServerPlayerEntity agent;
+        synchronized (AGENTS) {
+            agent = AGENTS.poll();
+            while (agent != null && (agent.isRemoved() || agent.isDead())) {
+                Rlmc.LOGGER.warn("Pooled agent \"{}\" died while waiting, discarding it.", agent.getGameProfile().getName());
+                discardAgent(agent);
+                agent = AGENTS.poll();
+            }
+        }
+        if (agent != null) {
+            prepareAgent(agent);
+            return CompletableFuture.completedFuture(agent);
+        }
+        return createPlayerAgent(NameGenerator.newName(server.getPlayerManager().getPlayerList()), server, getWaitingPos(server), 0, 0, server.getOverworld().getRegistryKey(), GameMode.SURVIVAL, false);
+    }
+
+    /**
+     * Take a ready world made with the generator, if there is one. Future worlds will be made with this generator.
+     *
+     * @return A world, or {@code null} if there isn't one ready.
+     */
+    public static @Nullable RuntimeWorldHandle takeWorld(ChunkGenerator generator) {
+        synchronized (AGENTS) {
+            if (AgentPool.generator != generator) {
+                AgentPool.generator = generator;
+                WORLDS.forEach(handle -> {
+                    WorldEnvironment.stopPrefetching(handle);
+                    handle.delete();
+                });
+                WORLDS.clear();
+                return null;
+            }
+            return WORLDS.poll();
+        }
+    }
+
+    /**
+     * Top up or trim the pool. Makes at most one world per tick, since that's the expensive part. Call on the server thread.
+     */
+    public static void tick(MinecraftServer server) {
+        int size = AgentPool.size;
+        synchronized (AGENTS) {
+            while (AGENTS.size() > size) {
+                discardAgent(AGENTS.remove());
+            }
+            while (WORLDS.size() > size) {
+                RuntimeWorldHandle handle = WORLDS.remove();
+                WorldEnvironment.stopPrefetching(handle);
+                handle.delete();
+            }
+            while (AGENTS.size() + pendingAgents < size) {
+                @Nullable CompletableFuture<ServerPlayerEntity> agent = createPooledAgent(server);
+                if (agent == null) {
+                    Rlmc.LOGGER.warn("Failed to spawn an agent for the pool.");
+                    break;
+                }
+                pendingAgents++;
+                agent.thenAccept(player -> {
+                    synchronized (AGENTS) {
+                        pendingAgents--;
+                        AGENTS.add(player);
+                    }
+                });
+            }
+            if (WORLDS.size() < size && generator != null) {
+                WORLDS.add(WorldEnvironment.openWorld(server, generator));
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.skycatdev.rlmc.Rlmc;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.Box;
+import org.jetbrains.annotations.Nullable;
+import xyz.nucleoid.fantasy.RuntimeWorldHandle;
+
+/**
+ * Packs many environments into one runtime world per chunk generator, instead of giving each its own world.
+ * The world is split into a grid of {@link ArenaAllocator#CELL_SIZE} square cells, and each environment gets one cell.
+ * The generator walls the cells off with barriers as their chunks generate (see {@link ArenaChunkGenerator.Settings#walls()}),
+ * so nothing has to be built while the server is ticking. A shared world is deleted once its last cell is released.<br>
+ * Cells aren't regenerated when they're released, so environments that change their arena should put it back themselves,
+ * like {@link FightEnemyEnvironment} does with {@link ArenaSnapshot}.
+ */
+public class ArenaAllocator {
+    /**
+     * The width of a cell, in blocks. A multiple of 16, so that cells line up with chunks.
+     */
+    public static final int CELL_SIZE = 192;
+    /**
+     * How many cells are in each row of the grid.
+     */
+    private static final int GRID_WIDTH = 64;
+    /**
+     * Synchronize on this first.
+     */
+    private static final Map<ArenaChunkGenerator, SharedWorld> WORLDS = new HashMap<>();
+
+    /**
+     * Give an environment a cell in the shared world made with the generator, opening the world if needed.
+     * Call on the server thread.
+     *
+     * @param generator A generator that walls off the cells, like one from {@link ArenaChunkGenerator#getWalled(MinecraftServer, ArenaChunkGenerator.Layout)}.
+     */
+    public static Arena allocate(MinecraftServer server, ArenaChunkGenerator generator) {
+        ArenaChunkGenerator.Settings settings = generator.getSettings();
+        if (!settings.walls() || settings.spacing() != CELL_SIZE) {
+            throw new EnvironmentException("Shared worlds need a generator that walls off cells " + CELL_SIZE + " blocks wide.");
+        }
+        synchronized (WORLDS) {
+            SharedWorld shared = WORLDS.computeIfAbsent(generator, key -> {
+                RuntimeWorldHandle handle = WorldEnvironment.openWorld(server, key);
+                WorldEnvironment.stopPrefetching(handle);
+                return new SharedWorld(handle);
+            });
+            int cell;
+            @Nullable Integer free = shared.free.poll();
+            if (free != null) {
+                cell = free;
+            } else {
+                cell = shared.nextCell++;
+            }
+            shared.allocated++;
+            Arena arena = new Arena(generator, shared.handle.asWorld(), cell, getOrigin(cell));
+            Rlmc.LOGGER.trace("Allocated arena {} at {} ({} in use)", cell, arena.origin(), shared.allocated);
+            return arena;
+        }
+    }
+
+    /**
+     * @return The center of the cell, at y = 0.
+     */
+    private static BlockPos getOrigin(int cell) {
+        return new BlockPos((cell % GRID_WIDTH) * CELL_SIZE, 0, (cell / GRID_WIDTH) * CELL_SIZE);
+    }
+
+    /**
+     * Give a cell back, removing any entities other than players left in it. Call on the server thread.
+     */
+    public static void release(Arena arena) {
+        synchronized (WORLDS) {
+            @Nullable SharedWorld shared = WORLDS.get(arena.generator());
+            if (shared == null || shared.handle.asWorld() != arena.world()) {
+                Rlmc.LOGGER.warn("Tried to release arena {}, but its world is already gone.", arena.cell());
+                return;
+            }
+            Box box = new Box(arena.origin()).expand(CELL_SIZE / 2d, 0, CELL_SIZE / 2d).withMinY(arena.world().getBottomY()).withMaxY(arena.world().getTopY());
+            for (Entity entity : arena.world().getEntitiesByClass(Entity.class, box, entity -> !(entity instanceof PlayerEntity))) {
+                entity.discard();
+            }
+            shared.allocated--;
+            if (shared.allocated <= 0) {
+                WORLDS.remove(arena.generator());
+                shared.handle.delete();
+                Rlmc.LOGGER.trace("Deleted shared world after releasing its last arena");
+            } else {
+                shared.free.add(arena.cell());
+            }
+        }
+    }
+
+    /**
+     * A cell of a shared world.
+     *
+     * @param generator The generator the world was made with.
+     * @param cell      The index of the cell in the grid.
+     * @param origin    The center of the cell, at y = 0. Environments should treat this like the world origin.
+     */
+    public record Arena(ArenaChunkGenerator generator, ServerWorld world, int cell, BlockPos origin) {
+        /**
+         * @return The inside of the cell's walls, from the bottom of the world to the top.
+         */
+        public BlockBox bounds() {
+            int minX = origin.getX() - CELL_SIZE / 2 + 1;
+            int minZ = origin.getZ() - CELL_SIZE / 2 + 1;
+            return new BlockBox(minX, world.getBottomY(), minZ, minX + CELL_SIZE - 3, world.getTopY() - 1, minZ + CELL_SIZE - 3);
+        }
+    }
+
+    private static class SharedWorld {
+        final RuntimeWorldHandle handle;
+        /**
+         * Released cells, handed out again oldest first.
+         */
+        final Queue<Integer> free = new ArrayDeque<>();
+        int nextCell = 0;
+        int allocated = 0;
+
+        SharedWorld(RuntimeWorldHandle handle) {
+            this.handle = handle;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import com.skycatdev.rlmc.Rlmc;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.StringIdentifiable;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.random.RandomSplitter;
+import net.minecraft.world.ChunkRegion;
+import net.minecraft.world.HeightLimitView;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.StructureWorldAccess;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.biome.BiomeKeys;
+import net.minecraft.world.biome.source.BiomeAccess;
+import net.minecraft.world.biome.source.FixedBiomeSource;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.gen.GenerationStep;
+import net.minecraft.world.gen.StructureAccessor;
+import net.minecraft.world.gen.chunk.Blender;
+import net.minecraft.world.gen.chunk.ChunkGenerator;
+import net.minecraft.world.gen.chunk.VerticalBlockSample;
+import net.minecraft.world.gen.noise.NoiseConfig;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cheap generator for training worlds. There's no noise, carving, features or structures - just a floor,
+ * and depending on the {@link Layout}, some obstacles. See {@link Settings} for the parameters.<br>
+ * With {@link Settings#walls()}, it also walls off the cells of {@link ArenaAllocator} with barriers as the chunks generate,
+ * so that handing out a cell doesn't have to place any blocks.
+ */
+public class ArenaChunkGenerator extends ChunkGenerator {
+    public static final MapCodec<ArenaChunkGenerator> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+            Biome.REGISTRY_CODEC.fieldOf("biome").forGetter(generator -> generator.biome),
+            Settings.CODEC.fieldOf("settings").forGetter(generator -> generator.settings)
+    ).apply(instance, ArenaChunkGenerator::new));
+    public static final Identifier ID = Identifier.of(Rlmc.MOD_ID, "arena");
+    private static final Identifier RANDOM_ID = Identifier.of(Rlmc.MOD_ID, "arena_obstacles");
+    private static final int MIN_Y = -64;
+    private static final int HEIGHT = 384;
+    private static final BlockState WALL = Blocks.BARRIER.getDefaultState();
+    /**
+     * How far below the top of the floor the walls reach.
+     */
+    private static final int WALL_DEPTH = 16;
+    /**
+     * How far above the top of the floor the walls reach. That's all that environments on the floor can reach.
+     */
+    private static final int WALL_HEIGHT = 48;
+    /**
+     * Shared generators, one per layout. Sharing lets runtime worlds be pooled between environments.
+     */
+    private static final Map<Layout, ArenaChunkGenerator> DEFAULTS = new EnumMap<>(Layout.class);
+    /**
+     * Shared generators with {@link Settings#walls()}, one per layout. See {@link ArenaAllocator}.
+     */
+    private static final Map<Layout, ArenaChunkGenerator> WALLED = new EnumMap<>(Layout.class);
+    protected final RegistryEntry<Biome> biome;
+    protected final Settings settings;
+
+    public ArenaChunkGenerator(RegistryEntry<Biome> biome, Settings settings) {
+        super(new FixedBiomeSource(biome));
+        this.biome = biome;
+        this.settings = settings;
+    }
+
+    /**
+     * @return The shared generator for the layout, with its default settings.
+     */
+    public static synchronized ArenaChunkGenerator get(MinecraftServer server, Layout layout) {
+        return DEFAULTS.computeIfAbsent(layout, key -> new ArenaChunkGenerator(server.getRegistryManager().get(RegistryKeys.BIOME).entryOf(BiomeKeys.THE_VOID), Settings.of(key, false)));
+    }
+
+    /**
+     * @return The shared generator for the layout, with its default settings and walls between the cells of {@link ArenaAllocator}.
+     */
+    public static synchronized ArenaChunkGenerator getWalled(MinecraftServer server, Layout layout) {
+        return WALLED.computeIfAbsent(layout, key -> new ArenaChunkGenerator(server.getRegistryManager().get(RegistryKeys.BIOME).entryOf(BiomeKeys.THE_VOID), Settings.of(key, true)));
+    }
+
+    @Override
+    public void buildSurface(ChunkRegion region, StructureAccessor structures, NoiseConfig noiseConfig, Chunk chunk) {
+    }
+
+    @Override
+    public void carve(ChunkRegion chunkRegion, long seed, NoiseConfig noiseConfig, BiomeAccess biomeAccess, StructureAccessor structureAccessor, Chunk chunk, GenerationStep.Carver carverStep) {
+    }
+
+    @Override
+    public void generateFeatures(StructureWorldAccess world, Chunk chunk, StructureAccessor structureAccessor) {
+    }
+
+    @Override
+    protected MapCodec<? extends ChunkGenerator> getCodec() {
+        return CODEC;
+    }
+
+    /**
+     * @return The y of the lowest block in the column, if it has any.
+     */
+    protected int getColumnBottom(boolean wall) {
+        int floorBottom = settings.floorY() - settings.floorDepth() + 1;
+        return wall ? Math.min(floorBottom, settings.floorY() + 1 - WALL_DEPTH) : floorBottom;
+    }
+
+    /**
+     * @return The y just above the highest block in the column, or {@link Integer#MIN_VALUE} if the column is empty.
+     */
+    protected int getColumnTop(int x, int z, NoiseConfig noiseConfig) {
+        int top = getTerrainTop(x, z, noiseConfig);
+        return isWall(x, z) ? Math.max(top, settings.floorY() + 1 + WALL_HEIGHT) : top;
+    }
+
+    /**
+     * @return The y just above the highest floor or obstacle block in the column, or {@link Integer#MIN_VALUE} if there aren't any.
+     */
+    protected int getTerrainTop(int x, int z, NoiseConfig noiseConfig) {
+        int localX = getLocal(x);
+        int localZ = getLocal(z);
+        if (settings.layout() != Layout.FLAT && (Math.abs(localX) > settings.radius() || Math.abs(localZ) > settings.radius())) {
+            return Integer.MIN_VALUE;
+        }
+        if (settings.layout() == Layout.PROCEDURAL && settings.obstacleChance() > 0) {
+            RandomSplitter splitter = noiseConfig.getOrCreateRandomDeriver(RANDOM_ID);
+            var random = splitter.split(x, 0, z);
+            if (random.nextFloat() < settings.obstacleChance()) {
+                return settings.floorY() + 2 + random.nextInt(settings.maxObstacleHeight());
+            }
+        }
+        return settings.floorY() + 1;
+    }
+
+    @Override
+    public VerticalBlockSample getColumnSample(int x, int z, HeightLimitView world, NoiseConfig noiseConfig) {
+        BlockState[] states = new BlockState[world.getHeight()];
+        Arrays.fill(states, Blocks.AIR.getDefaultState());
+        boolean wall = isWall(x, z);
+        int top = getColumnTop(x, z, noiseConfig);
+        for (int y = Math.max(getColumnBottom(wall), world.getBottomY()); y < Math.min(top, world.getTopY()); y++) {
+            states[y - world.getBottomY()] = getState(y, wall);
+        }
+        return new VerticalBlockSample(world.getBottomY(), states);
+    }
+
+    @Override
+    public void getDebugHudText(List<String> text, NoiseConfig noiseConfig, BlockPos pos) {
+        text.add("RLMC arena: " + settings.layout().asString());
+    }
+
+    @Override
+    public int getHeight(int x, int z, Heightmap.Type heightmap, HeightLimitView world, NoiseConfig noiseConfig) {
+        int top = getColumnTop(x, z, noiseConfig);
+        return top == Integer.MIN_VALUE ? world.getBottomY() : Math.min(top, world.getTopY());
+    }
+
+    @Override
+    public int getMinimumY() {
+        return MIN_Y;
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return MIN_Y;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return The coordinate relative to the center of the platform it's closest to.
+     */
+    protected int getLocal(int coordinate) {
+        if (settings.spacing() > 0) {
+            int half = settings.spacing() / 2;
+            return Math.floorMod(coordinate + half, settings.spacing()) - half;
+        }
+        return coordinate;
+    }
+
+    protected BlockState getState(int y, boolean wall) {
+        if (wall) {
+            return WALL;
+        }
+        return y <= settings.floorY() ? settings.floor() : settings.obstacle();
+    }
+
+    @Override
+    public int getWorldHeight() {
+        return HEIGHT;
+    }
+
+    /**
+     * @return Whether the column is on the edge of a cell, and so part of a wall. See {@link Settings#walls()}.
+     */
+    protected boolean isWall(int x, int z) {
+        if (!settings.walls() || settings.spacing() <= 0) {
+            return false;
+        }
+        int min = -(settings.spacing() / 2);
+        int max = settings.spacing() + min - 1;
+        int localX = getLocal(x);
+        int localZ = getLocal(z);
+        return localX == min || localX == max || localZ == min || localZ == max;
+    }
+
+    @Override
+    public void populateEntities(ChunkRegion region) {
+    }
+
+    @Override
+    public CompletableFuture<Chunk> populateNoise(Blender blender, NoiseConfig noiseConfig, StructureAccessor structureAccessor, Chunk chunk) {
+        Heightmap oceanFloor = chunk.getHeightmap(Heightmap.Type.OCEAN_FLOOR_WG);
+        Heightmap worldSurface = chunk.getHeightmap(Heightmap.Type.WORLD_SURFACE_WG);
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int startX = chunk.getPos().getStartX();
+        int startZ = chunk.getPos().getStartZ();
+        for (int localX = 0; localX < 16; localX++) {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                boolean wall = isWall(startX + localX, startZ + localZ);
+                int bottom = Math.max(getColumnBottom(wall), chunk.getBottomY());
+                int top = Math.min(getColumnTop(startX + localX, startZ + localZ, noiseConfig), chunk.getTopY());
+                for (int y = bottom; y < top; y++) {
+                    BlockState state = getState(y, wall);
+                    chunk.setBlockState(pos.set(localX, y, localZ), state, false);
+                    oceanFloor.trackUpdate(localX, y, localZ, state);
+                    worldSurface.trackUpdate(localX, y, localZ, state);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(chunk);
+    }
+
+    public enum Layout implements StringIdentifiable {
+        /**
+         * A floor everywhere.
+         */
+        FLAT("flat"),
+        /**
+         * A square platform around the origin, with nothing around it.
+         */
+        PLATFORM("platform"),
+        /**
+         * A platform with obstacles scattered on it, placed by the world seed.
+         */
+        PROCEDURAL("procedural");
+
+        public static final Codec<Layout> CODEC = StringIdentifiable.createCodec(Layout::values);
+        private final String name;
+
+        Layout(String name) {
+            this.name = name;
+        }
+
+        public static @Nullable Layout byName(String name) {
+            for (Layout layout : values()) {
+                if (layout.name.equals(name)) {
+                    return layout;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String asString() {
+            return name;
+        }
+    }
+
+    /**
+     * @param floorY            The y of the top of the floor.
+     * @param floorDepth        How many blocks thick the floor is.
+     * @param radius            How far the platform reaches from the origin. Not used by {@link Layout#FLAT}.
+     * @param spacing           How far apart platforms repeat, so that every cell of a shared world has one (see {@link ArenaAllocator}). 0 for only one.
+     * @param walls             Whether to wall off the square around each platform with barriers, {@code spacing} blocks wide. Only used with a spacing.
+     * @param obstacleChance    The chance of each column having an obstacle. Only used by {@link Layout#PROCEDURAL}.
+     * @param maxObstacleHeight The tallest an obstacle can be.
+     */
+    public record Settings(Layout layout, int floorY, int floorDepth, int radius, int spacing, boolean walls, float obstacleChance, int maxObstacleHeight, BlockState floor, BlockState obstacle) {
+        public static final Codec<Settings> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+                Layout.CODEC.fieldOf("layout").forGetter(Settings::layout),
+                Codec.intRange(MIN_Y, MIN_Y + HEIGHT - 1).fieldOf("floor_y").forGetter(Settings::floorY),
+                Codec.intRange(1, HEIGHT).fieldOf("floor_depth").forGetter(Settings::floorDepth),
+                Codec.intRange(0, 30_000_000).fieldOf("radius").forGetter(Settings::radius),
+                Codec.intRange(0, 30_000_000).optionalFieldOf("spacing", 0).forGetter(Settings::spacing),
+                Codec.BOOL.optionalFieldOf("walls", false).forGetter(Settings::walls),
+                Codec.floatRange(0, 1).fieldOf("obstacle_chance").forGetter(Settings::obstacleChance),
+                Codec.intRange(1, HEIGHT).fieldOf("max_obstacle_height").forGetter(Settings::maxObstacleHeight),
+                BlockState.CODEC.fieldOf("floor").forGetter(Settings::floor),
+                BlockState.CODEC.fieldOf("obstacle").forGetter(Settings::obstacle)
+        ).apply(instance, Settings::new));
+
+        /**
+         * @param walls Whether to wall off the cells of {@link ArenaAllocator}.
+         * @return The default settings for a layout.
+         */
+        public static Settings of(Layout layout, boolean walls) {
+            return new Settings(layout, 64, 1, 48, ArenaAllocator.CELL_SIZE, walls, layout == Layout.PROCEDURAL ? 0.03f : 0, 3, Blocks.STONE.getDefaultState(), Blocks.COBBLESTONE.getDefaultState());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A copy of the chunk sections, block entities and entities around an arena, used to put it back the way it was
+ * instead of making a new world. Restoring only touches the blocks that changed.
+ */
+public class ArenaSnapshot {
+    protected final BlockBox box;
+    protected final List<Section> sections;
+    protected final Map<BlockPos, NbtCompound> blockEntities;
+    protected final List<NbtCompound> entities;
+    /**
+     * Which entities are part of the arena, and so are saved and restored.
+     */
+    protected final Predicate<Entity> entityFilter;
+    /**
+     * The entities from {@link ArenaSnapshot#entities} that are in the world right now, so that they can be removed
+     * even if they left the box.
+     */
+    protected final Set<UUID> placed;
+
+    protected ArenaSnapshot(BlockBox box, List<Section> sections, Map<BlockPos, NbtCompound> blockEntities, List<NbtCompound> entities, Predicate<Entity> entityFilter, Set<UUID> placed) {
+        this.box = box;
+        this.sections = sections;
+        this.blockEntities = blockEntities;
+        this.entities = entities;
+        this.entityFilter = entityFilter;
+        this.placed = placed;
+    }
+
+    /**
+     * Save the chunk sections touching the box, and everything in them.
+     *
+     * @param entityFilter Which entities to save. Entities that don't match aren't touched when restoring.
+     */
+    public static ArenaSnapshot capture(ServerWorld world, BlockBox box, Predicate<Entity> entityFilter) {
+        List<Section> sections = new ArrayList<>();
+        Map<BlockPos, NbtCompound> blockEntities = new HashMap<>();
+        int minSectionY = Math.max(ChunkSectionPos.getSectionCoord(box.getMinY()), world.getBottomSectionCoord());
+        int maxSectionY = Math.min(ChunkSectionPos.getSectionCoord(box.getMaxY()), world.getTopSectionCoord() - 1);
+        for (int chunkX = ChunkSectionPos.getSectionCoord(box.getMinX()); chunkX <= ChunkSectionPos.getSectionCoord(box.getMaxX()); chunkX++) {
+            for (int chunkZ = ChunkSectionPos.getSectionCoord(box.getMinZ()); chunkZ <= ChunkSectionPos.getSectionCoord(box.getMaxZ()); chunkZ++) {
+                WorldChunk chunk = world.getChunk(chunkX, chunkZ);
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    ChunkSection section = chunk.getSection(world.sectionCoordToIndex(sectionY));
+                    sections.add(new Section(ChunkSectionPos.from(chunkX, sectionY, chunkZ), section.getBlockStateContainer().copy(), section.isEmpty()));
+                }
+                for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+                    int sectionY = ChunkSectionPos.getSectionCoord(blockEntity.getPos().getY());
+                    if (sectionY >= minSectionY && sectionY <= maxSectionY) {
+                        blockEntities.put(blockEntity.getPos().toImmutable(), blockEntity.createNbtWithIdentifyingData(world.getRegistryManager()));
+                    }
+                }
+            }
+        }
+        List<NbtCompound> entities = new ArrayList<>();
+        Set<UUID> placed = new HashSet<>();
+        for (Entity entity : world.getEntitiesByClass(Entity.class, Box.from(box), entityFilter)) {
+            NbtCompound nbt = new NbtCompound();
+            if (entity.saveSelfNbt(nbt)) {
+                entities.add(nbt);
+                entity.streamSelfAndPassengers().forEach(saved -> placed.add(saved.getUuid()));
+            }
+        }
+        return new ArenaSnapshot(box, sections, blockEntities, entities, entityFilter, placed);
+    }
+
+    /**
+     * Put the arena back the way it was when it was captured. The saved entities are removed wherever they went,
+     * along with anything else matching the filter that's still in the box, like dropped items.
+     *
+     * @return The number of blocks that had to be changed.
+     */
+    public int restore(ServerWorld world) {
+        for (UUID uuid : placed) {
+            @Nullable Entity entity = world.getEntity(uuid);
+            if (entity != null) {
+                entity.discard();
+            }
+        }
+        placed.clear();
+        for (Entity entity : world.getEntitiesByClass(Entity.class, Box.from(box), entityFilter)) {
+            entity.discard();
+        }
+        int changed = 0;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (Section saved : sections) {
+            ChunkSectionPos sectionPos = saved.pos();
+            ChunkSection current = world.getChunk(sectionPos.getSectionX(), sectionPos.getSectionZ()).getSection(world.sectionCoordToIndex(sectionPos.getSectionY()));
+            if (saved.empty() && current.isEmpty()) {
+                continue;
+            }
+            PalettedContainer<BlockState> currentStates = current.getBlockStateContainer();
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockState state = saved.states().get(x, y, z);
+                        if (currentStates.get(x, y, z) != state) {
+                            pos.set(sectionPos.getMinX() + x, sectionPos.getMinY() + y, sectionPos.getMinZ() + z);
+                            world.setBlockState(pos, state, Block.NOTIFY_LISTENERS | Block.FORCE_STATE | Block.SKIP_DROPS);
+                            changed++;
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<BlockPos, NbtCompound> entry : blockEntities.entrySet()) {
+            BlockEntity blockEntity = world.getBlockEntity(entry.getKey());
+            if (blockEntity != null && !entry.getValue().equals(blockEntity.createNbtWithIdentifyingData(world.getRegistryManager()))) {
+                blockEntity.read(entry.getValue(), world.getRegistryManager());
+                blockEntity.markDirty();
+            }
+        }
+        for (NbtCompound nbt : entities) {
+            Entity entity = EntityType.loadEntityWithPassengers(nbt, world, loaded -> {
+                loaded.setUuid(UUID.randomUUID()); // The original might not be fully gone yet
+                return loaded;
+            });
+            if (entity != null && world.spawnNewEntityAndPassengers(entity)) {
+                entity.streamSelfAndPassengers().forEach(spawned -> placed.add(spawned.getUuid()));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param empty Whether the section was all air, so that it can be skipped if it still is.
+     */
+    protected record Section(ChunkSectionPos pos, PalettedContainer<BlockState> states, boolean empty) {
+    }
+}
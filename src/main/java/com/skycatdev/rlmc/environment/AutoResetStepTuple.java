@@ -0,0 +1,12 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The result of {@link Environment#requestAutoResetStep(byte[], boolean)}.
+ *
+ * @param terminalObservation The encoded observation the episode ended with, or {@code null} if it didn't end and there was no reset.
+ */
+public record AutoResetStepTuple<O>(StepTuple<O> step, byte @Nullable [] terminalObservation) {
+}
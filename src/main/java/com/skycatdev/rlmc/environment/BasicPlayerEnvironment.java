@@ -2,9 +2,11 @@
 package com.skycatdev.rlmc.environment;
 
 import carpet.fakes.ServerPlayerInterface;
-import carpet.patches.EntityPlayerMPFake;
+import com.skycatdev.rlmc.NameGenerator;
 import com.skycatdev.rlmc.Rlmc;
 import com.skycatdev.rlmc.command.EnvironmentSettings;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.FutureTask;
@@ -12,7 +14,6 @@ import java.util.function.Supplier;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Pair;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.GameMode;
@@ -30,9 +31,56 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
     protected FutureActionPack.History history;
     protected boolean justKilled;
     /**
-     * True if {@link Environment#innerReset} has been called at least once.
+     * Encoded actions are decoded into this instead of a new pack each step. Actions are only decoded on the server thread,
+     * right before the tick that uses them, so it's never overwritten while in use. See {@link Environment#requestStep(byte[])}.
      */
-    private boolean running;
+    private final FutureActionPack decodedAction = new FutureActionPack();
+    /**
+     * Casts the observation rays, reusing its scratch space between steps.
+     */
+    protected final BatchRaycaster raycaster = new BatchRaycaster();
+    /**
+     * The chunks around the agent, for observing. See {@link BasicPlayerEnvironment#getChunks()}.
+     */
+    private final ChunkCache chunks = new ChunkCache();
+    /**
+     * How many of the most recent frames each encoded observation holds. 1 means no frame stacking.
+     */
+    protected final int frameStack;
+    /**
+     * A ring of the most recent encoded frames, see {@link BasicPlayerEnvironment#observe()}. Reused between steps.
+     */
+    private @Nullable ByteBuffer frames;
+    /**
+     * The index of the newest frame in {@link BasicPlayerEnvironment#frames}.
+     */
+    private int newestFrame;
+    /**
+     * The frames in {@link BasicPlayerEnvironment#frames}, oldest first. Only used when stacking frames, and reused between steps.
+     */
+    private byte @Nullable [] stackedFrames;
+    /**
+     * The heightmap around the agent, reused between steps. {@code null} if {@link EnvironmentSettings#getHeightmapWidth()} is 0.
+     */
+    private final short @Nullable [] heightmap;
+    /**
+     * The blocks around the agent, reused between steps. {@code null} if {@link EnvironmentSettings#getVoxelSize()} is 0.
+     */
+    private final short @Nullable [] voxels;
+    /**
+     * The components to observe. Made on first use, see {@link BasicPlayerEnvironment#getObservationComponents()}.
+     */
+    private @Nullable Set<ObservationComponent> observationComponents;
+    /**
+     * Made on first use, see {@link BasicPlayerEnvironment#getObservationSchema()}.
+     */
+    private @Nullable SpaceSchema observationSchema;
+    /**
+     * Reward from the repeated ticks of the step in progress, which is added to the step's reward.
+     */
+    private double repeatReward;
+    private boolean repeatTerminated;
+    private boolean repeatTruncated;
 
     public BasicPlayerEnvironment(EnvironmentSettings settings, ServerPlayerEntity agent, Supplier<Float> initialHealth, Supplier<Integer> initialFoodLevel, int xRaycasts, int yRaycasts) {
         super(settings, Objects.requireNonNull(agent.getServer()));
@@ -41,9 +89,11 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
         this.initialFoodLevel = initialFoodLevel;
         this.xRaycasts = xRaycasts;
         this.yRaycasts = yRaycasts;
-        this.history = new FutureActionPack.History();
+        this.history = new FutureActionPack.History(settings.getRememberedActions());
         this.justKilled = false;
-        this.running = false;
+        this.heightmap = settings.getHeightmapWidth() > 0 ? new short[HeightmapObservation.LAYERS * settings.getHeightmapWidth() * settings.getHeightmapWidth()] : null;
+        this.frameStack = Math.max(1, settings.getFrameStack());
+        this.voxels = settings.getVoxelSize() > 0 ? new short[settings.getVoxelSize() * settings.getVoxelSize() * settings.getVoxelSize()] : null;
         ((PlayerAgentCandidate) agent).rlmc$markAsAgent();
         ((PlayerAgentCandidate) agent).rlmc$setKilledTrigger(this::onAgentKilled);
     }
@@ -58,21 +108,7 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
 
     @SuppressWarnings("SameParameterValue")
     private static @Nullable CompletableFuture<ServerPlayerEntity> createPlayerAgent(String name, MinecraftServer server, Vec3d pos, double yaw, double pitch, RegistryKey<World> world, GameMode gamemode, boolean flying) {
-        if (EntityPlayerMPFake.createFake(name, server, pos, yaw, pitch, world, gamemode, flying)) {
-            CompletableFuture<ServerPlayerEntity> future = new CompletableFuture<>();
-            new Thread(() -> {
-                @Nullable ServerPlayerEntity player = server.getPlayerManager().getPlayer(name);
-                while (player == null) {
-                    Thread.yield();
-                    player = server.getPlayerManager().getPlayer(name);
-                }
-                ((PlayerAgentCandidate) player).rlmc$markAsAgent();
-                future.complete(player);
-            }, "RLMC Create Player Agent Thread").start();
-            return future;
-        } else {
-            return null;
-        }
+        return AgentPool.createPlayerAgent(name, server, pos, yaw, pitch, world, gamemode, flying);
     }
 
     protected boolean checkAndUpdateJustKilled() {
@@ -89,6 +125,106 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
         super.close();
         ((PlayerAgentCandidate) agent).rlmc$unmarkAsAgent();
         agent.kill();
+        NameGenerator.releaseName(agent.getGameProfile().getName());
+    }
+
+    @Override
+    protected FutureActionPack decodeAction(ByteBuffer buffer) {
+        return decodedAction.decodeInto(buffer);
+    }
+
+    @Override
+    public int getEncodedActionSize() {
+        return FutureActionPack.ENCODED_SIZE;
+    }
+
+    @Override
+    public int getEncodedObservationSize() {
+        return getEncodedFrameSize() * frameStack;
+    }
+
+    /**
+     * @return The number of bytes one frame of the observation is encoded in.
+     */
+    protected int getEncodedFrameSize() {
+        return BasicPlayerObservation.getEncodedSize(getRaycasts(), getRememberedActions(), getObservationComponents()) + getEncodedGridsSize();
+    }
+
+    @Override
+    public SpaceSchema getActionSchema() {
+        return FutureActionPack.SCHEMA;
+    }
+
+    @Override
+    public SpaceSchema getObservationSchema() {
+        if (observationSchema == null) {
+            SpaceSchema.Builder builder = SpaceSchema.builder();
+            describeObservation(builder);
+            if (getHeightmapWidth() > 0) {
+                HeightmapObservation.describe(builder, getHeightmapWidth());
+            }
+            if (getVoxelSize() > 0) {
+                VoxelGridObservation.describe(builder, getVoxelSize(), getVoxelSize(), getVoxelSize());
+            }
+            if (builder.size() != getEncodedFrameSize()) {
+                throw new EnvironmentException("The observation schema describes " + builder.size() + " bytes, but frames are " + getEncodedFrameSize() + " bytes.");
+            }
+            observationSchema = builder.build().stacked(frameStack);
+        }
+        return observationSchema;
+    }
+
+    /**
+     * Describe the layout the observation's {@link BasicPlayerObservation#encode(ByteBuffer)} writes. The heightmap and voxel grid are added after it.
+     */
+    protected void describeObservation(SpaceSchema.Builder builder) {
+        BasicPlayerObservation.describe(builder, getRaycasts(), getRaycastDistance(), getRememberedActions(), getObservationComponents());
+    }
+
+    /**
+     * @return The number of bytes the heightmap and voxel grid take at the end of each encoded observation.
+     */
+    private int getEncodedGridsSize() {
+        return HeightmapObservation.getEncodedSize(getHeightmapWidth()) + VoxelGridObservation.getEncodedSize(getVoxelSize(), getVoxelSize(), getVoxelSize());
+    }
+
+    /**
+     * @return The components observed when {@link EnvironmentSettings#getObservationComponents()} isn't set.
+     */
+    protected Set<ObservationComponent> getDefaultObservationComponents() {
+        return BasicPlayerObservation.ALL_COMPONENTS;
+    }
+
+    /**
+     * @return The components to observe, from the settings or {@link BasicPlayerEnvironment#getDefaultObservationComponents()}.
+     */
+    public Set<ObservationComponent> getObservationComponents() {
+        if (observationComponents == null) {
+            @Nullable Set<ObservationComponent> fromSettings = settings.getObservationComponents();
+            observationComponents = Collections.unmodifiableSet(fromSettings == null ? getDefaultObservationComponents() : fromSettings);
+        }
+        return observationComponents;
+    }
+
+    /**
+     * @return How many of the agent's most recent actions each encoded observation holds, see {@link FutureActionPack.History#getRecentActions()}.
+     */
+    public int getRememberedActions() {
+        return settings.getRememberedActions();
+    }
+
+    /**
+     * @return How many blocks wide the cube of blocks at the end of each encoded observation is, or 0 if there isn't one.
+     */
+    public int getVoxelSize() {
+        return settings.getVoxelSize();
+    }
+
+    /**
+     * @return How many blocks wide the heightmap at the end of each encoded observation is, or 0 if there isn't one.
+     */
+    public int getHeightmapWidth() {
+        return settings.getHeightmapWidth();
     }
 
     protected abstract HashMap<String, Object> getInfo(BasicPlayerObservation observation);
@@ -97,8 +233,76 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
         return getRaycastDistance;
     }
 
+    /**
+     * @return The chunks around the agent, covering everything an observation reads. Only read the world through these while observing.
+     * On the server thread they're looked up now, and when post-ticking in parallel they were looked up by {@link BasicPlayerEnvironment#prepareParallelPostTick()}.
+     */
+    protected ChunkCache getChunks() {
+        if (!isPostTickingInParallel()) {
+            updateChunks();
+        }
+        return chunks;
+    }
+
     protected abstract O getObservation();
 
+    /**
+     * Get an observation and encode it as the newest frame for {@link BasicPlayerEnvironment#getEncodedObservation()}.
+     * If there's a heightmap or voxel grid, they're sampled and encoded after the observation, in that order.
+     *
+     * @param reset Whether this is the first observation of an episode. If so, every frame of the stack is set to it.
+     */
+    protected O observe(boolean reset) {
+        O observation = getObservation();
+        int frameSize = observation.getEncodedSize() + getEncodedGridsSize();
+        if (frames == null || frames.capacity() != frameSize * frameStack) {
+            frames = ByteBuffer.allocate(frameSize * frameStack).order(ByteOrder.LITTLE_ENDIAN);
+            reset = true;
+        }
+        newestFrame = (newestFrame + 1) % frameStack;
+        frames.clear().position(newestFrame * frameSize);
+        observation.encode(frames);
+        if (heightmap != null) {
+            HeightmapObservation.sample(getChunks(), agent.getBlockPos(), getHeightmapWidth(), heightmap).encode(frames);
+        }
+        if (voxels != null) {
+            VoxelGridObservation.sample(getChunks(), agent.getBlockPos(), getVoxelSize(), getVoxelSize(), getVoxelSize(), voxels).encode(frames);
+        }
+        if (frameStack > 1) {
+            byte[] ring = frames.array();
+            if (reset) {
+                for (int i = 0; i < frameStack; i++) {
+                    if (i != newestFrame) {
+                        System.arraycopy(ring, newestFrame * frameSize, ring, i * frameSize, frameSize);
+                    }
+                }
+            }
+            if (stackedFrames == null || stackedFrames.length != ring.length) {
+                stackedFrames = new byte[ring.length];
+            }
+            // Oldest first: everything after the newest frame, then everything up to it
+            int oldest = (newestFrame + 1) * frameSize;
+            System.arraycopy(ring, oldest, stackedFrames, 0, ring.length - oldest);
+            System.arraycopy(ring, 0, stackedFrames, ring.length - oldest, oldest);
+        }
+        return observation;
+    }
+
+    /**
+     * @return The most recent {@link EnvironmentSettings#getFrameStack()} frames, oldest first, each encoded as
+     * {@link BasicPlayerObservation#encode(ByteBuffer)}, followed by {@link HeightmapObservation#encode(ByteBuffer)} if there's a heightmap
+     * and {@link VoxelGridObservation#encode(ByteBuffer)} if there's a voxel grid. At the start of an episode, every frame is the first observation.
+     * The array is reused, so it is only valid until the next step or reset.
+     */
+    @Override
+    @SuppressWarnings("unused") // Used by wrapped_schema_environment.py
+    public byte[] getEncodedObservation() {
+        if (frames == null) {
+            throw new EnvironmentException("Tried to get an encoded observation before the first reset.");
+        }
+        return frameStack > 1 ? Objects.requireNonNull(stackedFrames) : frames.array();
+    }
+
     @SuppressWarnings("unused") // Used by wrapped_basic_player_environment.py
     public int getRaycasts() {
         return xRaycasts * yRaycasts;
@@ -108,15 +312,26 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
 
 
     protected void deleteCurrentWorld() {
+        if (arena != null) {
+            ArenaAllocator.release(arena);
+            arena = null;
+            Rlmc.setEnvironmentWorld(this, null);
+        }
         if (worldHandle != null) {
             worldHandle.delete();
             worldHandle = null;
+            Rlmc.setEnvironmentWorld(this, null);
         }
     }
 
     @Override
     protected ChunkGenerator getChunkGenerator() {
-        return Objects.requireNonNull(agent.getServer()).getOverworld().getChunkManager().getChunkGenerator();
+        MinecraftServer server = Objects.requireNonNull(agent.getServer());
+        @Nullable ArenaChunkGenerator.Layout layout = settings.getArenaLayout();
+        if (layout != null) {
+            return settings.shouldShareWorld() ? ArenaChunkGenerator.getWalled(server, layout) : ArenaChunkGenerator.get(server, layout);
+        }
+        return server.getOverworld().getChunkManager().getChunkGenerator();
     }
 
     /**
@@ -126,15 +341,15 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
 
     @Override
     protected ResetTuple<O> innerReset(@Nullable Integer seed, @Nullable Map<String, Object> options) {
-        running = true;
         Rlmc.LOGGER.trace("Running innerPreReset for basic player env \"{}\"", getUniqueEnvName());
         innerPreReset(seed, options);
         Rlmc.LOGGER.trace("Finished running innerPreReset for basic player env \"{}\"", getUniqueEnvName());
-        history = new FutureActionPack.History();
+        history.clear();
         resetAgent();
+        clearRepeatResults();
 
 
-        return new ResetTuple<>(getObservation(), new HashMap<>());
+        return new ResetTuple<>(observe(true), new HashMap<>());
     }
 
     protected void resetAgent() {
@@ -153,12 +368,68 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
             return true;
         });
         FutureTask<StepTuple<O>> postTick = new FutureTask<>(() -> {
-            O observation = getObservation();
-            return new StepTuple<>(observation, getReward(observation), isTerminated(observation), isTruncated(observation), getInfo(observation));
+            O observation = observe(false);
+            double reward = repeatReward;
+            boolean terminated = repeatTerminated;
+            boolean truncated = repeatTruncated;
+            if (!terminated && !truncated) { // If a repeated tick ended the episode, this tick was already judged
+                reward += getReward(observation);
+                terminated = isTerminated(observation);
+                truncated = isTruncated(observation);
+            }
+            clearRepeatResults();
+            return new StepTuple<>(observation, reward, terminated, truncated, getInfo(observation));
         });
         return new Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>>(preTick, postTick);
     }
 
+    private void clearRepeatResults() {
+        repeatReward = 0;
+        repeatTerminated = false;
+        repeatTruncated = false;
+    }
+
+    @Override
+    protected void preRepeatTick(FutureActionPack action) {
+        action.copyTo(((ServerPlayerInterface) agent).getActionPack());
+    }
+
+    /**
+     * Collects the reward and end conditions of a repeated tick, judging them with a fresh observation of that tick.
+     * The observation isn't encoded or added to the frame stack, since Python never sees it.
+     */
+    @Override
+    protected boolean repeatTick() {
+        O observation = getObservation();
+        repeatReward += getReward(observation);
+        repeatTerminated |= isTerminated(observation);
+        repeatTruncated |= isTruncated(observation);
+        return repeatTerminated || repeatTruncated;
+    }
+
+    /**
+     * Look up the chunks and build the entity grid for observing, since neither can be done off the server thread.
+     */
+    @Override
+    public void prepareParallelPostTick() {
+        updateChunks();
+        EntityGrid.get(agent.getServerWorld());
+    }
+
+    private void updateChunks() {
+        int reach = Math.max(BatchRaycaster.getReach(getRaycastDistance()), Math.max(getHeightmapWidth(), getVoxelSize()) / 2 + 1);
+        chunks.update(agent.getServerWorld(), agent.getBlockX(), agent.getBlockZ(), reach);
+    }
+
+    /**
+     * Observing, rewarding and judging only read the world. Subclasses that change anything while doing so should use
+     * {@link BasicPlayerEnvironment#runAfterPostTick(Runnable)} or override this.
+     */
+    @Override
+    protected boolean supportsParallelPostTick() {
+        return true;
+    }
+
     protected abstract boolean isTerminated(BasicPlayerObservation observation);
 
     protected abstract boolean isTruncated(BasicPlayerObservation observation);
@@ -169,11 +440,6 @@ public abstract class BasicPlayerEnvironment<O extends BasicPlayerObservation> e
         justKilled = true;
     }
 
-    @Override
-    public boolean isIn(ServerWorld world) {
-        return world.equals(getWorld()) || (!running && waitingForTick()); // Second condition is a hack to get the first reset done
-    }
-
     @Override
     public String getUniqueEnvName() {
         return agent.getName().getString();
@@ -1,55 +1,285 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.environment;
 
+import com.skycatdev.rlmc.RegistryIndex;
+import com.skycatdev.rlmc.Rlmc;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
-import net.minecraft.entity.projectile.ProjectileUtil;
+import java.util.Set;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.util.hit.EntityHitResult;
-import net.minecraft.util.math.Box;
-import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.RaycastContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import org.jetbrains.annotations.Nullable;
 
 public class BasicPlayerObservation {
+    /**
+     * Bytes per encoded block ray: relative x, y, z, side, block state id.
+     */
+    public static final int BLOCK_BYTES = 5 * Integer.BYTES;
+    /**
+     * Bytes per encoded entity ray: entity type id, hit x, y, z.
+     */
+    public static final int ENTITY_BYTES = Integer.BYTES + 3 * Float.BYTES;
+    /**
+     * Bytes for the encoded agent: x, y, z, yaw, pitch, hotbar, health.
+     */
+    public static final int SELF_BYTES = 7 * Float.BYTES;
+    /**
+     * Bytes for the encoded history: one counter per {@link FutureActionPack.ActionType}, then yaw and pitch.
+     */
+    public static final int HISTORY_BYTES = FutureActionPack.ActionType.values().length * Integer.BYTES + 2 * Float.BYTES;
+    /**
+     * Bytes for each remembered action, see {@link FutureActionPack.History#getRecentActions()}.
+     */
+    public static final int RECENT_ACTION_BYTES = FutureActionPack.History.ACTION_FLOATS * Float.BYTES;
+    /**
+     * Every component a basic observation has.
+     */
+    public static final Set<ObservationComponent> ALL_COMPONENTS = EnumSet.of(ObservationComponent.BLOCKS, ObservationComponent.ENTITIES, ObservationComponent.SELF, ObservationComponent.HISTORY);
+    /**
+     * How far from the origin positions are expected to be, for the bounds in {@link BasicPlayerObservation#describe(SpaceSchema.Builder, int, int, Set)}.
+     */
+    public static final int MAX_DISTANCE_FROM_ORIGIN = 3000;
     private final List<BlockHitInfo> blocks;
     private final List<@Nullable EntityHitResult> entities;
     private final ServerPlayerEntity self;
     private final FutureActionPack.History history;
+    /**
+     * The origin of the agent's arena. Encoded positions are relative to it.
+     */
+    private final BlockPos origin;
+    /**
+     * The components that were observed. The others are empty and aren't encoded.
+     */
+    private final Set<ObservationComponent> components;
 
     public BasicPlayerObservation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities,
                                   ServerPlayerEntity self, FutureActionPack.History history) {
+        this(blocks, entities, self, history, BlockPos.ORIGIN);
+    }
+
+    public BasicPlayerObservation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities,
+                                  ServerPlayerEntity self, FutureActionPack.History history, BlockPos origin) {
+        this(blocks, entities, self, history, origin, ALL_COMPONENTS);
+    }
+
+    public BasicPlayerObservation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities,
+                                  ServerPlayerEntity self, FutureActionPack.History history, BlockPos origin, Set<ObservationComponent> components) {
         this.blocks = blocks;
         this.entities = entities;
         this.self = self;
         this.history = history;
+        this.origin = origin;
+        this.components = components;
     }
 
     public static BasicPlayerObservation fromPlayer(ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, FutureActionPack.History history) {
-        List<BlockHitInfo> blocks = new ArrayList<>();
-        List<@Nullable EntityHitResult> entities = new ArrayList<>();
-        double deltaAngleX = fovRad / xRaycasts;
-        double deltaAngleY = fovRad / yRaycasts;
-        for (double i = 0; i < xRaycasts; i++) {
-            for (double j = 0; j < yRaycasts; j++) {
-                Vec3d pos = player.getCameraPosVec(0);
-                Vec3d rot = player.getRotationVec(0).rotateX((float) (i * deltaAngleX - (fovRad / 2)));
-                rot = rot.rotateY((float) (j * deltaAngleY - (fovRad / 2)));
-                Vec3d max = pos.add(rot.x * maxDistance, rot.y * maxDistance, rot.z * maxDistance);
-                // Blocks (see Entity#raycast)
-                BlockHitResult blockHitResult = player.getServerWorld().raycast(new RaycastContext(pos, max, RaycastContext.ShapeType.VISUAL, RaycastContext.FluidHandling.ANY, player));
-                blocks.add(new BlockHitInfo(blockHitResult.getSide(), blockHitResult.getBlockPos(), player.getServerWorld().getBlockState(blockHitResult.getBlockPos())));
-
-                // Entities (see GameRenderer#findCrosshairTarget)
-                Box box = player.getBoundingBox().stretch(rot.multiply(maxDistance)).expand(1, 1, 1);
-
-                @Nullable EntityHitResult entityHitResult = ProjectileUtil.raycast(player, pos, max, box, entity -> !entity.isInvisibleTo(player), Math.pow(maxDistance, 2));
-                entities.add(entityHitResult);
+        return fromPlayer(player, xRaycasts, yRaycasts, maxDistance, fovRad, history, BlockPos.ORIGIN);
+    }
+
+    /**
+     * @param origin The origin of the agent's arena, like {@link WorldEnvironment#getOrigin()}.
+     */
+    public static BasicPlayerObservation fromPlayer(ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, FutureActionPack.History history, BlockPos origin) {
+        return fromPlayer(new BatchRaycaster(), player, xRaycasts, yRaycasts, maxDistance, fovRad, history, origin);
+    }
+
+    /**
+     * @param raycaster The raycaster to cast with, so that its scratch space is reused between observations.
+     * @param origin    The origin of the agent's arena, like {@link WorldEnvironment#getOrigin()}.
+     */
+    public static BasicPlayerObservation fromPlayer(BatchRaycaster raycaster, ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, FutureActionPack.History history, BlockPos origin) {
+        return fromPlayer(raycaster, player, xRaycasts, yRaycasts, maxDistance, fovRad, history, origin, ALL_COMPONENTS);
+    }
+
+    /**
+     * @param raycaster  The raycaster to cast with, so that its scratch space is reused between observations.
+     * @param origin     The origin of the agent's arena, like {@link WorldEnvironment#getOrigin()}.
+     * @param components The components to observe. Rays are only cast for {@link ObservationComponent#BLOCKS} and {@link ObservationComponent#ENTITIES}.
+     */
+    public static BasicPlayerObservation fromPlayer(BatchRaycaster raycaster, ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, FutureActionPack.History history, BlockPos origin, Set<ObservationComponent> components) {
+        return fromPlayer(raycaster, null, player, xRaycasts, yRaycasts, maxDistance, fovRad, history, origin, components);
+    }
+
+    /**
+     * @param raycaster  The raycaster to cast with, so that its scratch space is reused between observations.
+     * @param chunks     The chunks to cast through, see {@link BatchRaycaster#cast(ChunkCache, ServerPlayerEntity, int, int, double, double, List, List)}.
+     *                   {@code null} to look them up now, on the server thread.
+     * @param origin     The origin of the agent's arena, like {@link WorldEnvironment#getOrigin()}.
+     * @param components The components to observe. Rays are only cast for {@link ObservationComponent#BLOCKS} and {@link ObservationComponent#ENTITIES}.
+     */
+    public static BasicPlayerObservation fromPlayer(BatchRaycaster raycaster, @Nullable ChunkCache chunks, ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, FutureActionPack.History history, BlockPos origin, Set<ObservationComponent> components) {
+        @Nullable List<BlockHitInfo> blocks = components.contains(ObservationComponent.BLOCKS) ? new ArrayList<>(xRaycasts * yRaycasts) : null;
+        @Nullable List<@Nullable EntityHitResult> entities = components.contains(ObservationComponent.ENTITIES) ? new ArrayList<>(xRaycasts * yRaycasts) : null;
+        if (chunks == null) {
+            raycaster.cast(player, xRaycasts, yRaycasts, maxDistance, fovRad, blocks, entities);
+        } else {
+            raycaster.cast(chunks, player, xRaycasts, yRaycasts, maxDistance, fovRad, blocks, entities);
+        }
+        return new BasicPlayerObservation(blocks == null ? List.of() : blocks, entities == null ? List.of() : entities, player, history, origin, components);
+    }
+
+    /**
+     * @param raycasts The number of block and entity rays.
+     * @return The number of bytes {@link BasicPlayerObservation#encode(ByteBuffer)} writes for an observation with {@code raycasts} rays.
+     */
+    public static int getEncodedSize(int raycasts) {
+        return getEncodedSize(raycasts, ALL_COMPONENTS);
+    }
+
+    /**
+     * @param raycasts   The number of block and entity rays.
+     * @param components The observed components.
+     * @return The number of bytes {@link BasicPlayerObservation#encode(ByteBuffer)} writes for an observation with {@code raycasts} rays
+     * and only {@code components}.
+     */
+    public static int getEncodedSize(int raycasts, Set<ObservationComponent> components) {
+        return getEncodedSize(raycasts, 0, components);
+    }
+
+    /**
+     * @param raycasts          The number of block and entity rays.
+     * @param rememberedActions The number of recent actions in the history, see {@link FutureActionPack.History#getRememberedActions()}.
+     * @param components        The observed components.
+     * @return The number of bytes {@link BasicPlayerObservation#encode(ByteBuffer)} writes for an observation with {@code raycasts} rays,
+     * {@code rememberedActions} recent actions and only {@code components}.
+     */
+    public static int getEncodedSize(int raycasts, int rememberedActions, Set<ObservationComponent> components) {
+        int size = 0;
+        if (components.contains(ObservationComponent.BLOCKS)) {
+            size += raycasts * BLOCK_BYTES;
+        }
+        if (components.contains(ObservationComponent.ENTITIES)) {
+            size += raycasts * ENTITY_BYTES;
+        }
+        if (components.contains(ObservationComponent.SELF)) {
+            size += SELF_BYTES;
+        }
+        if (components.contains(ObservationComponent.HISTORY)) {
+            size += HISTORY_BYTES + rememberedActions * RECENT_ACTION_BYTES;
+        }
+        return size;
+    }
+
+    public int getEncodedSize() {
+        return getEncodedSize(Math.max(blocks.size(), entities.size()), history.getRememberedActions(), components);
+    }
+
+    /**
+     * Describe the layout {@link BasicPlayerObservation#encode(ByteBuffer)} writes. The field names are the keys of the Python observation.
+     *
+     * @param raycasts    The number of block and entity rays.
+     * @param maxDistance How far the rays reach.
+     * @param components  The observed components.
+     */
+    public static void describe(SpaceSchema.Builder builder, int raycasts, int maxDistance, Set<ObservationComponent> components) {
+        describe(builder, raycasts, maxDistance, 0, components);
+    }
+
+    /**
+     * Describe the layout {@link BasicPlayerObservation#encode(ByteBuffer)} writes. The field names are the keys of the Python observation.
+     *
+     * @param raycasts          The number of block and entity rays.
+     * @param maxDistance       How far the rays reach.
+     * @param rememberedActions The number of recent actions in the history, see {@link FutureActionPack.History#getRememberedActions()}.
+     * @param components        The observed components.
+     */
+    public static void describe(SpaceSchema.Builder builder, int raycasts, int maxDistance, int rememberedActions, Set<ObservationComponent> components) {
+        RegistryIndex index = Rlmc.getRegistryIndex();
+        if (components.contains(ObservationComponent.BLOCKS)) {
+            builder.box("blocks", SpaceSchema.DType.INT32, new int[]{raycasts, 5},
+                    new double[]{-maxDistance, -maxDistance, -maxDistance, 0, 0},
+                    new double[]{maxDistance, maxDistance, maxDistance, 5, index.getBlockStateCount()}); // The last block state is modded
+        }
+        if (components.contains(ObservationComponent.ENTITIES)) {
+            builder.records(raycasts, entity -> entity
+                    .discrete("entities", SpaceSchema.DType.INT32, new int[0], index.getEntityTypeCount() + 1) // The last one is nothing
+                    .box("entity_pos", SpaceSchema.DType.FLOAT32, new int[]{3}, -MAX_DISTANCE_FROM_ORIGIN, MAX_DISTANCE_FROM_ORIGIN));
+        }
+        if (components.contains(ObservationComponent.SELF)) {
+            builder.box("x", SpaceSchema.DType.FLOAT32, new int[]{1}, -MAX_DISTANCE_FROM_ORIGIN, MAX_DISTANCE_FROM_ORIGIN)
+                    .box("y", SpaceSchema.DType.FLOAT32, new int[]{1}, -MAX_DISTANCE_FROM_ORIGIN, MAX_DISTANCE_FROM_ORIGIN)
+                    .box("z", SpaceSchema.DType.FLOAT32, new int[]{1}, -MAX_DISTANCE_FROM_ORIGIN, MAX_DISTANCE_FROM_ORIGIN)
+                    .box("yaw", SpaceSchema.DType.FLOAT32, new int[]{1}, -1, 1)
+                    .box("pitch", SpaceSchema.DType.FLOAT32, new int[]{1}, -1, 1)
+                    .discrete("hotbar", SpaceSchema.DType.INT32, new int[0], 9)
+                    .box("health", SpaceSchema.DType.FLOAT32, new int[]{1}, -1, 1);
+        }
+        if (components.contains(ObservationComponent.HISTORY)) {
+            builder.box("history", SpaceSchema.DType.INT32, new int[]{FutureActionPack.ActionType.values().length},
+                            -FutureActionPack.History.MAX_COUNT, FutureActionPack.History.MAX_COUNT)
+                    .box("history_rotation", SpaceSchema.DType.FLOAT32, new int[]{2}, -1, 1);
+            if (rememberedActions > 0) {
+                builder.box("recent_actions", SpaceSchema.DType.FLOAT32, new int[]{rememberedActions, FutureActionPack.History.ACTION_FLOATS}, -1, 1);
+            }
+        }
+    }
+
+    /**
+     * Write this observation into {@code buffer}, which should be little-endian. Every value is four bytes wide.
+     * The layout is, in order:<br>
+     * 1. Blocks, for each ray: x, y, z relative to the agent's block position, side ({@link net.minecraft.util.math.Direction#getId()})
+     * and block state id (see {@link RegistryIndex#getBlockStateId(net.minecraft.block.BlockState)}), all int32<br>
+     * 2. Entities, for each ray: entity type id (int32, see {@link RegistryIndex#getEntityTypeId(net.minecraft.entity.EntityType)},
+     * {@link RegistryIndex#getEntityTypeCount()} if nothing was hit),
+     * then the hit x, y, z relative to the origin (float32, zero if nothing was hit)<br>
+     * 3. Self: x, y, z relative to the origin, yaw / 180, pitch / 90 (float32), hotbar slot (int32), health mapped from [0, 20] to [-1, 1] (float32)<br>
+     * 4. History: one int32 per {@link FutureActionPack.ActionType} in ordinal order, then yaw / 180 and pitch / 90 (float32),
+     * then the recent actions, oldest first (float32, see {@link FutureActionPack.History#getRecentActions()})<br>
+     * Components that weren't observed are left out, and the ones after them move up.
+     *
+     * @param buffer The buffer to write to. Must have at least {@link BasicPlayerObservation#getEncodedSize()} bytes remaining.
+     */
+    public void encode(ByteBuffer buffer) {
+        BlockPos selfPos = self.getBlockPos();
+        RegistryIndex index = Rlmc.getRegistryIndex();
+        // Components that weren't observed are empty lists, so only self and history need checking
+        for (BlockHitInfo block : blocks) {
+            buffer.putInt(block.blockPos().getX() - selfPos.getX());
+            buffer.putInt(block.blockPos().getY() - selfPos.getY());
+            buffer.putInt(block.blockPos().getZ() - selfPos.getZ());
+            buffer.putInt(block.side().getId());
+            buffer.putInt(index.getBlockStateId(block.blockState()));
+        }
+        int noEntity = index.getEntityTypeCount();
+        for (@Nullable EntityHitResult entity : entities) {
+            if (entity == null) {
+                buffer.putInt(noEntity);
+                buffer.putFloat(0);
+                buffer.putFloat(0);
+                buffer.putFloat(0);
+            } else {
+                buffer.putInt(index.getEntityTypeId(entity.getEntity().getType()));
+                buffer.putFloat((float) (entity.getPos().getX() - origin.getX()));
+                buffer.putFloat((float) (entity.getPos().getY() - origin.getY()));
+                buffer.putFloat((float) (entity.getPos().getZ() - origin.getZ()));
+            }
+        }
+        if (components.contains(ObservationComponent.SELF)) {
+            buffer.putFloat((float) (self.getX() - origin.getX()));
+            buffer.putFloat((float) (self.getY() - origin.getY()));
+            buffer.putFloat((float) (self.getZ() - origin.getZ()));
+            buffer.putFloat(MathHelper.wrapDegrees(self.getYaw()) / 180);
+            buffer.putFloat(MathHelper.wrapDegrees(self.getPitch()) / 90);
+            buffer.putInt(self.getInventory().selectedSlot);
+            buffer.putFloat((MathHelper.clamp(self.getHealth(), 0, 20) - 10) / 10);
+        }
+        if (components.contains(ObservationComponent.HISTORY)) {
+            int[] counters = history.getCounters();
+            buffer.asIntBuffer().put(counters);
+            buffer.position(buffer.position() + counters.length * Integer.BYTES);
+            buffer.putFloat(history.getYaw() / 180f);
+            buffer.putFloat(history.getPitch() / 90f);
+            if (history.getRememberedActions() > 0) {
+                float[] recentActions = history.getRecentActions();
+                buffer.asFloatBuffer().put(recentActions);
+                buffer.position(buffer.position() + recentActions.length * Float.BYTES);
             }
         }
-        return new BasicPlayerObservation(blocks, entities, player, history);
     }
 
     public List<BlockHitInfo> blocks() {
@@ -68,6 +298,14 @@ public class BasicPlayerObservation {
         return history;
     }
 
+    public BlockPos origin() {
+        return origin;
+    }
+
+    public Set<ObservationComponent> components() {
+        return components;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
@@ -76,12 +314,14 @@ public class BasicPlayerObservation {
         return Objects.equals(this.blocks, that.blocks) &&
                Objects.equals(this.entities, that.entities) &&
                Objects.equals(this.self, that.self) &&
-               Objects.equals(this.history, that.history);
+               Objects.equals(this.history, that.history) &&
+               Objects.equals(this.origin, that.origin) &&
+               Objects.equals(this.components, that.components);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(blocks, entities, self, history);
+        return Objects.hash(blocks, entities, self, history, origin, components);
     }
 
     @Override
@@ -90,7 +330,9 @@ public class BasicPlayerObservation {
                "blocks=" + blocks + ", " +
                "entities=" + entities + ", " +
                "self=" + self + ", " +
-               "history=" + history + ']';
+               "history=" + history + ", " +
+               "origin=" + origin + ", " +
+               "components=" + components + ']';
     }
 
 }
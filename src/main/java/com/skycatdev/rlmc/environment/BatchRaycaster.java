@@ -0,0 +1,347 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.hit.EntityHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.world.RaycastContext;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Casts a whole grid of rays from a player at once. The chunk sections in reach are looked up once per batch from a {@link ChunkCache},
+ * then each ray walks the blocks it passes through (a DDA voxel traversal), only checking shapes of blocks that aren't air.
+ * Blocks are only read through the cache, so with one filled ahead of time, a batch can be cast off the server thread.
+ * Entity rays are answered by the world's {@link EntityGrid}.
+ * Hits match {@link ServerWorld#raycast(RaycastContext)} with {@link RaycastContext.ShapeType#VISUAL} and
+ * {@link RaycastContext.FluidHandling#ANY}, and {@link net.minecraft.entity.projectile.ProjectileUtil#raycast} for entities.<br>
+ * The scratch space is reused between batches, so keep one per agent. Not thread safe.<br>
+ * The last batch's hits are kept, and reused while the camera hasn't moved and nothing the rays could hit has changed:
+ * block rays until a block in one of the sections in reach changes (see {@link VersionedChunkSection}), and entity rays
+ * until an entity is added to, removed from or moves in one of the grid cells the rays crossed (see {@link EntityGrid#areCellsUnchanged}).
+ */
+public class BatchRaycaster {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+    private final BlockPos.Mutable mutable = new BlockPos.Mutable();
+    /**
+     * The chunks for {@link BatchRaycaster#cast(ServerPlayerEntity, int, int, double, double, List, List)}.
+     */
+    private final ChunkCache ownChunks = new ChunkCache();
+    private @Nullable ChunkSection[] sections = new ChunkSection[0];
+    private int minSectionX;
+    private int minSectionY;
+    private int minSectionZ;
+    private int sectionsX;
+    private int sectionsY;
+    private int sectionsZ;
+    private float[] cosX = new float[0];
+    private float[] sinX = new float[0];
+    private float[] cosY = new float[0];
+    private float[] sinY = new float[0];
+    /**
+     * The camera the cached hits were cast from.
+     */
+    private @Nullable Vec3d cachedEye;
+    private @Nullable Vec3d cachedLook;
+    private int cachedXRaycasts;
+    private int cachedYRaycasts;
+    private double cachedMaxDistance;
+    private double cachedFovRad;
+    /**
+     * The sections the cached block hits were cast through, and their {@link VersionedChunkSection#rlmc$getBlockVersion()}s.
+     * {@code null} if the block hits aren't cached.
+     */
+    private @Nullable ChunkSection @Nullable [] cachedSections;
+    private int[] cachedSectionVersions = new int[0];
+    /**
+     * The array behind {@link BatchRaycaster#cachedSections}, kept when the cache is cleared so it can be reused.
+     */
+    private @Nullable ChunkSection @Nullable [] sectionsSnapshot;
+    private final List<BlockHitInfo> cachedBlocks = new ArrayList<>();
+    /**
+     * The grid the cached entity hits were cast with. {@code null} if the entity hits aren't cached.
+     */
+    private @Nullable EntityGrid cachedEntityGrid;
+    /**
+     * The grid cells the cached entity hits were cast through, and their versions.
+     */
+    private final Long2IntOpenHashMap cachedEntityCells = new Long2IntOpenHashMap();
+    private final List<@Nullable EntityHitResult> cachedEntities = new ArrayList<>();
+
+    /**
+     * Cast a batch, looking up the chunks in reach first. Call on the server thread.
+     *
+     * @see BatchRaycaster#cast(ChunkCache, ServerPlayerEntity, int, int, double, double, List, List)
+     */
+    public void cast(ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, @Nullable List<BlockHitInfo> blocks, @Nullable List<@Nullable EntityHitResult> entities) {
+        ownChunks.update(player.getServerWorld(), player.getBlockX(), player.getBlockZ(), getReach(maxDistance));
+        cast(ownChunks, player, xRaycasts, yRaycasts, maxDistance, fovRad, blocks, entities);
+    }
+
+    /**
+     * Cast {@code xRaycasts * yRaycasts} rays spread evenly over the field of view, and add their hits to {@code blocks} and
+     * {@code entities}, in the same order as {@link BasicPlayerObservation#fromPlayer}.
+     *
+     * @param chunks   The chunks around the player, covering at least {@link BatchRaycaster#getReach(double)} blocks on each side.
+     *                 Blocks are only read from these.
+     * @param blocks   Gets the block hits, or {@code null} to not cast block rays.
+     * @param entities Gets the entity hits, {@code null} for rays that didn't hit an entity. {@code null} to not cast entity rays.
+     */
+    public void cast(ChunkCache chunks, ServerPlayerEntity player, int xRaycasts, int yRaycasts, double maxDistance, double fovRad, @Nullable List<BlockHitInfo> blocks, @Nullable List<@Nullable EntityHitResult> entities) {
+        if (blocks == null && entities == null) {
+            return;
+        }
+        ServerWorld world = player.getServerWorld();
+        Vec3d eye = player.getCameraPosVec(0);
+        Vec3d look = player.getRotationVec(0);
+        if (!eye.equals(cachedEye) || !look.equals(cachedLook) || xRaycasts != cachedXRaycasts || yRaycasts != cachedYRaycasts || maxDistance != cachedMaxDistance || fovRad != cachedFovRad) {
+            cachedEye = eye;
+            cachedLook = look;
+            cachedXRaycasts = xRaycasts;
+            cachedYRaycasts = yRaycasts;
+            cachedMaxDistance = maxDistance;
+            cachedFovRad = fovRad;
+            cachedSections = null;
+            cachedEntityGrid = null;
+        }
+        if (blocks != null) {
+            cacheSections(chunks, eye, maxDistance);
+            if (areSectionsUnchanged()) {
+                blocks.addAll(cachedBlocks);
+                blocks = null;
+            } else {
+                saveSections();
+                cachedBlocks.clear();
+            }
+        }
+        @Nullable EntityGrid entityGrid = null;
+        if (entities != null) {
+            entityGrid = EntityGrid.get(world);
+            if (entityGrid == cachedEntityGrid && entityGrid.areCellsUnchanged(cachedEntityCells)) {
+                entities.addAll(cachedEntities);
+                entities = null;
+                entityGrid = null;
+            } else {
+                cachedEntityGrid = entityGrid;
+                cachedEntityCells.clear();
+                cachedEntities.clear();
+            }
+        }
+        if (blocks == null && entities == null) {
+            return;
+        }
+        cacheAngles(xRaycasts, yRaycasts, fovRad);
+        RaycastContext shapes = new RaycastContext(eye, eye, RaycastContext.ShapeType.VISUAL, RaycastContext.FluidHandling.ANY, player);
+        double maxDistanceSquared = maxDistance * maxDistance;
+        for (int i = 0; i < xRaycasts; i++) {
+            // Vec3d#rotateX
+            double x1 = look.x;
+            double y1 = look.y * cosX[i] + look.z * sinX[i];
+            double z1 = look.z * cosX[i] - look.y * sinX[i];
+            for (int j = 0; j < yRaycasts; j++) {
+                // Vec3d#rotateY
+                double dx = (x1 * cosY[j] + z1 * sinY[j]) * maxDistance;
+                double dy = y1 * maxDistance;
+                double dz = (z1 * cosY[j] - x1 * sinY[j]) * maxDistance;
+                if (blocks != null) {
+                    cachedBlocks.add(castBlocks(chunks, shapes, eye, dx, dy, dz));
+                }
+                if (entityGrid != null) {
+                    cachedEntities.add(entityGrid.raycast(player, eye, new Vec3d(eye.x + dx, eye.y + dy, eye.z + dz), maxDistanceSquared, cachedEntityCells));
+                }
+            }
+        }
+        if (blocks != null) {
+            blocks.addAll(cachedBlocks);
+        }
+        if (entities != null) {
+            entities.addAll(cachedEntities);
+        }
+    }
+
+    /**
+     * @return How far from the player, in blocks, a batch with the max distance can read.
+     */
+    public static int getReach(double maxDistance) {
+        return MathHelper.ceil(maxDistance) + 1;
+    }
+
+    /**
+     * @return Whether the sections from {@link BatchRaycaster#cacheSections} are the ones the cached block hits were cast through,
+     * and none of their blocks have changed since.
+     */
+    private boolean areSectionsUnchanged() {
+        int size = sectionsX * sectionsY * sectionsZ;
+        if (cachedSections == null || cachedSections.length != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            @Nullable ChunkSection section = sections[i];
+            if (section != cachedSections[i] || (section != null && ((VersionedChunkSection) section).rlmc$getBlockVersion() != cachedSectionVersions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remember the sections from {@link BatchRaycaster#cacheSections} and their versions, for {@link BatchRaycaster#areSectionsUnchanged()}.
+     */
+    private void saveSections() {
+        int size = sectionsX * sectionsY * sectionsZ;
+        if (cachedSectionVersions.length != size) {
+            cachedSectionVersions = new int[size];
+        }
+        cachedSections = sectionsSnapshot != null && sectionsSnapshot.length == size ? sectionsSnapshot : new ChunkSection[size];
+        sectionsSnapshot = cachedSections;
+        System.arraycopy(sections, 0, cachedSections, 0, size);
+        for (int i = 0; i < size; i++) {
+            @Nullable ChunkSection section = sections[i];
+            cachedSectionVersions[i] = section == null ? 0 : ((VersionedChunkSection) section).rlmc$getBlockVersion();
+        }
+    }
+
+    private void cacheAngles(int xRaycasts, int yRaycasts, double fovRad) {
+        if (cosX.length != xRaycasts) {
+            cosX = new float[xRaycasts];
+            sinX = new float[xRaycasts];
+        }
+        if (cosY.length != yRaycasts) {
+            cosY = new float[yRaycasts];
+            sinY = new float[yRaycasts];
+        }
+        double deltaAngleX = fovRad / xRaycasts;
+        double deltaAngleY = fovRad / yRaycasts;
+        for (int i = 0; i < xRaycasts; i++) {
+            float angle = (float) (i * deltaAngleX - (fovRad / 2));
+            cosX[i] = MathHelper.cos(angle);
+            sinX[i] = MathHelper.sin(angle);
+        }
+        for (int j = 0; j < yRaycasts; j++) {
+            float angle = (float) (j * deltaAngleY - (fovRad / 2));
+            cosY[j] = MathHelper.cos(angle);
+            sinY[j] = MathHelper.sin(angle);
+        }
+    }
+
+    /**
+     * Look up the chunk sections that any ray could reach. Sections of chunks that aren't loaded are treated as air.
+     */
+    private void cacheSections(ChunkCache chunks, Vec3d eye, double maxDistance) {
+        minSectionX = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.x - maxDistance) - 1);
+        minSectionY = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.y - maxDistance) - 1);
+        minSectionZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.z - maxDistance) - 1);
+        sectionsX = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.x + maxDistance) + 1) - minSectionX + 1;
+        sectionsY = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.y + maxDistance) + 1) - minSectionY + 1;
+        sectionsZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(eye.z + maxDistance) + 1) - minSectionZ + 1;
+        int size = sectionsX * sectionsY * sectionsZ;
+        if (sections.length < size) {
+            sections = new ChunkSection[size];
+        }
+        for (int x = 0; x < sectionsX; x++) {
+            for (int z = 0; z < sectionsZ; z++) {
+                @Nullable WorldChunk chunk = chunks.getChunk(minSectionX + x, minSectionZ + z);
+                for (int y = 0; y < sectionsY; y++) {
+                    int sectionY = minSectionY + y;
+                    @Nullable ChunkSection section = null;
+                    if (chunk != null && sectionY >= chunks.getBottomSectionCoord() && sectionY < chunks.getTopSectionCoord()) {
+                        section = chunk.getSection(chunks.sectionCoordToIndex(sectionY));
+                        if (section.isEmpty()) {
+                            section = null;
+                        }
+                    }
+                    sections[(x * sectionsZ + z) * sectionsY + y] = section;
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the blocks along one ray, see {@link net.minecraft.world.BlockView#raycast(RaycastContext)}.
+     */
+    private BlockHitInfo castBlocks(ChunkCache chunks, RaycastContext shapes, Vec3d start, double dx, double dy, double dz) {
+        Vec3d end = new Vec3d(start.x + dx, start.y + dy, start.z + dz);
+        int x = MathHelper.floor(start.x);
+        int y = MathHelper.floor(start.y);
+        int z = MathHelper.floor(start.z);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        int stepZ = dz > 0 ? 1 : -1;
+        // Distances are fractions of the ray's length
+        double deltaX = dx == 0 ? Double.MAX_VALUE : 1 / Math.abs(dx);
+        double deltaY = dy == 0 ? Double.MAX_VALUE : 1 / Math.abs(dy);
+        double deltaZ = dz == 0 ? Double.MAX_VALUE : 1 / Math.abs(dz);
+        double nextX = deltaX * (dx > 0 ? 1 - MathHelper.fractionalPart(start.x) : MathHelper.fractionalPart(start.x));
+        double nextY = deltaY * (dy > 0 ? 1 - MathHelper.fractionalPart(start.y) : MathHelper.fractionalPart(start.y));
+        double nextZ = deltaZ * (dz > 0 ? 1 - MathHelper.fractionalPart(start.z) : MathHelper.fractionalPart(start.z));
+        while (true) {
+            BlockState state = getBlockState(chunks, x, y, z);
+            if (!state.isAir()) {
+                @Nullable BlockHitResult hit = hitBlock(chunks, shapes, start, end, mutable.set(x, y, z), state);
+                if (hit != null) {
+                    return new BlockHitInfo(hit.getSide(), hit.getBlockPos().toImmutable(), state);
+                }
+            }
+            if (nextX > 1 && nextY > 1 && nextZ > 1) {
+                break;
+            }
+            if (nextX < nextY && nextX < nextZ) {
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY < nextZ) {
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        BlockPos endPos = BlockPos.ofFloored(end);
+        return new BlockHitInfo(Direction.getFacing(-dx, -dy, -dz), endPos, getBlockState(chunks, endPos.getX(), endPos.getY(), endPos.getZ()));
+    }
+
+    private BlockState getBlockState(ChunkCache chunks, int x, int y, int z) {
+        int sectionX = ChunkSectionPos.getSectionCoord(x) - minSectionX;
+        int sectionY = ChunkSectionPos.getSectionCoord(y) - minSectionY;
+        int sectionZ = ChunkSectionPos.getSectionCoord(z) - minSectionZ;
+        if (sectionX < 0 || sectionX >= sectionsX || sectionY < 0 || sectionY >= sectionsY || sectionZ < 0 || sectionZ >= sectionsZ) {
+            return chunks.getBlockState(mutable.set(x, y, z));
+        }
+        @Nullable ChunkSection section = sections[(sectionX * sectionsZ + sectionZ) * sectionsY + sectionY];
+        return section == null ? AIR : section.getBlockState(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * Check the block's shape and fluid, keeping the closer hit. See {@link net.minecraft.world.BlockView#raycast(RaycastContext)}.
+     */
+    private static @Nullable BlockHitResult hitBlock(ChunkCache chunks, RaycastContext shapes, Vec3d start, Vec3d end, BlockPos pos, BlockState state) {
+        VoxelShape blockShape = shapes.getBlockShape(state, chunks, pos);
+        @Nullable BlockHitResult blockHit = chunks.raycastBlock(start, end, pos, blockShape, state);
+        FluidState fluid = state.getFluidState();
+        if (fluid.isEmpty()) {
+            return blockHit;
+        }
+        @Nullable BlockHitResult fluidHit = shapes.getFluidShape(fluid, chunks, pos).raycast(start, end, pos);
+        if (blockHit == null) {
+            return fluidHit;
+        }
+        if (fluidHit == null) {
+            return blockHit;
+        }
+        return start.squaredDistanceTo(blockHit.getPos()) <= start.squaredDistanceTo(fluidHit.getPos()) ? blockHit : fluidHit;
+    }
+}
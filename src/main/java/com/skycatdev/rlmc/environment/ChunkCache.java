@@ -0,0 +1,100 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.fluid.Fluids;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.BlockView;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The loaded chunks in a square of columns, looked up on the server thread so that they can be read from another one.
+ * {@link net.minecraft.server.world.ServerChunkManager} only hands out chunks on the server thread - anywhere else,
+ * {@code getWorldChunk} returns {@code null} and other lookups wait for the server thread, which never comes while it's
+ * waiting on {@link com.skycatdev.rlmc.ParallelPostTick}. The chunks themselves are safe to read while no world is ticking.<br>
+ * Chunks that weren't loaded, and everything outside the square, read as air. Reused between updates. Not thread safe.
+ */
+public class ChunkCache implements BlockView {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+    private @Nullable WorldChunk[] chunks = new WorldChunk[0];
+    private int minChunkX;
+    private int minChunkZ;
+    private int chunksX;
+    private int chunksZ;
+    private int bottomY;
+    private int height;
+
+    /**
+     * Look up the chunks of every column within {@code radius} blocks of the center on each axis. Call on the server thread.
+     */
+    public void update(ServerWorld world, int centerX, int centerZ, int radius) {
+        minChunkX = ChunkSectionPos.getSectionCoord(centerX - radius);
+        minChunkZ = ChunkSectionPos.getSectionCoord(centerZ - radius);
+        chunksX = ChunkSectionPos.getSectionCoord(centerX + radius) - minChunkX + 1;
+        chunksZ = ChunkSectionPos.getSectionCoord(centerZ + radius) - minChunkZ + 1;
+        bottomY = world.getBottomY();
+        height = world.getHeight();
+        if (chunks.length < chunksX * chunksZ) {
+            chunks = new WorldChunk[chunksX * chunksZ];
+        }
+        for (int x = 0; x < chunksX; x++) {
+            for (int z = 0; z < chunksZ; z++) {
+                chunks[x * chunksZ + z] = world.getChunkManager().getWorldChunk(minChunkX + x, minChunkZ + z);
+            }
+        }
+    }
+
+    /**
+     * @return The chunk, or {@code null} if it wasn't loaded or isn't in the square.
+     */
+    public @Nullable WorldChunk getChunk(int chunkX, int chunkZ) {
+        int x = chunkX - minChunkX;
+        int z = chunkZ - minChunkZ;
+        if (x < 0 || x >= chunksX || z < 0 || z >= chunksZ) {
+            return null;
+        }
+        return chunks[x * chunksZ + z];
+    }
+
+    private @Nullable WorldChunk getChunk(BlockPos pos) {
+        if (isOutOfHeightLimit(pos)) {
+            return null;
+        }
+        return getChunk(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+
+    @Override
+    public @Nullable BlockEntity getBlockEntity(BlockPos pos) {
+        @Nullable WorldChunk chunk = getChunk(pos);
+        // Don't make missing block entities, that's for the server thread
+        return chunk == null ? null : chunk.getBlockEntity(pos, WorldChunk.CreationType.CHECK);
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        @Nullable WorldChunk chunk = getChunk(pos);
+        return chunk == null ? AIR : chunk.getBlockState(pos);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        @Nullable WorldChunk chunk = getChunk(pos);
+        return chunk == null ? Fluids.EMPTY.getDefaultState() : chunk.getFluidState(pos);
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getBottomY() {
+        return bottomY;
+    }
+}
@@ -0,0 +1,288 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.hit.EntityHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A uniform grid of the entities in a world, so that entity rays only test the entities near them.
+ * It's rebuilt the first time it's used after the world ticks or an entity is added or removed, so all the rays cast in a
+ * tick share one build. Entities that are teleported without ticking the world stay where they were indexed until then.<br>
+ * Each build is published as a {@link Snapshot} that isn't changed afterward, so rays can be cast from any thread while
+ * another one rebuilds. A snapshot's lists are only reused two builds later, once nothing can still be casting with it.<br>
+ * Grids are only made for worlds that are raycast in, and are dropped when their world unloads.
+ */
+public class EntityGrid {
+    /**
+     * The width of a grid cell, in blocks.
+     */
+    public static final int CELL_SIZE = 4;
+    /**
+     * A cell version no cell ever has. Empty cells have version 0.
+     */
+    private static final int STALE = -1;
+    private static final Map<RegistryKey<World>, EntityGrid> GRIDS = new ConcurrentHashMap<>();
+    /**
+     * The latest build.
+     */
+    private volatile Snapshot snapshot = new Snapshot(new Long2ObjectOpenHashMap<>(), new Long2IntOpenHashMap(), new ArrayList<>(), new ArrayList<>(), 0);
+    /**
+     * The build before {@link EntityGrid#snapshot}, reused by the next build. Only used while synchronized.
+     */
+    private @Nullable Snapshot retired;
+    /**
+     * Cleared cell lists from {@link EntityGrid#retired}, to fill again. Only used while synchronized.
+     */
+    private final ArrayDeque<IntArrayList> spareCells = new ArrayDeque<>();
+    private volatile boolean dirty = true;
+
+    /**
+     * @return The up-to-date grid for the world.
+     */
+    public static EntityGrid get(ServerWorld world) {
+        EntityGrid grid = GRIDS.computeIfAbsent(world.getRegistryKey(), key -> new EntityGrid());
+        grid.update(world);
+        return grid;
+    }
+
+    /**
+     * @param crossedCells The cells from {@link EntityGrid#raycast(Entity, Vec3d, Vec3d, double, Long2IntMap)}.
+     * @return Whether every cell still has the same entities in the same places, so that rays through them would hit the same things.
+     * Doesn't notice an entity only becoming invisible.
+     */
+    public boolean areCellsUnchanged(Long2IntMap crossedCells) {
+        Long2IntOpenHashMap versions = snapshot.cellVersions();
+        for (Long2IntMap.Entry entry : crossedCells.long2IntEntrySet()) {
+            if (versions.get(entry.getLongKey()) != entry.getIntValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuild the world's grid the next time it's used.
+     */
+    public static void markDirty(World world) {
+        @Nullable EntityGrid grid = GRIDS.get(world.getRegistryKey());
+        if (grid != null) {
+            grid.dirty = true;
+        }
+    }
+
+    /**
+     * Registered to {@link net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents}.
+     */
+    public static void onEntityChanged(Entity entity, ServerWorld world) {
+        markDirty(world);
+    }
+
+    /**
+     * Registered to {@link net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents#UNLOAD}.
+     */
+    public static void onWorldUnload(MinecraftServer server, ServerWorld world) {
+        GRIDS.remove(world.getRegistryKey());
+    }
+
+    /**
+     * The closest entity along a ray, see {@link net.minecraft.entity.projectile.ProjectileUtil#raycast}.
+     * Walks the grid cells the ray passes through, testing only the entities in them.
+     *
+     * @param source The entity casting the ray. It isn't hit, and neither is anything invisible to it.
+     * @param end          Where the ray ends.
+     * @param crossedCells Gets the cells the ray passed through and their versions, for {@link EntityGrid#areCellsUnchanged(Long2IntMap)}.
+     *                     {@code null} to not keep track.
+     * @return The hit, or {@code null} if nothing was hit within {@code sqrt(maxDistanceSquared)}.
+     */
+    public @Nullable EntityHitResult raycast(Entity source, Vec3d start, Vec3d end, double maxDistanceSquared, @Nullable Long2IntMap crossedCells) {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot.entities().isEmpty() && crossedCells == null) {
+            return null;
+        }
+        Entity rootVehicle = source.getRootVehicle();
+        double dx = (end.x - start.x) / CELL_SIZE;
+        double dy = (end.y - start.y) / CELL_SIZE;
+        double dz = (end.z - start.z) / CELL_SIZE;
+        double startX = start.x / CELL_SIZE;
+        double startY = start.y / CELL_SIZE;
+        double startZ = start.z / CELL_SIZE;
+        int x = MathHelper.floor(startX);
+        int y = MathHelper.floor(startY);
+        int z = MathHelper.floor(startZ);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        int stepZ = dz > 0 ? 1 : -1;
+        double deltaX = dx == 0 ? Double.MAX_VALUE : 1 / Math.abs(dx);
+        double deltaY = dy == 0 ? Double.MAX_VALUE : 1 / Math.abs(dy);
+        double deltaZ = dz == 0 ? Double.MAX_VALUE : 1 / Math.abs(dz);
+        double nextX = deltaX * (dx > 0 ? 1 - MathHelper.fractionalPart(startX) : MathHelper.fractionalPart(startX));
+        double nextY = deltaY * (dy > 0 ? 1 - MathHelper.fractionalPart(startY) : MathHelper.fractionalPart(startY));
+        double nextZ = deltaZ * (dz > 0 ? 1 - MathHelper.fractionalPart(startZ) : MathHelper.fractionalPart(startZ));
+        double closest = maxDistanceSquared;
+        @Nullable Entity hitEntity = null;
+        @Nullable Vec3d hitPos = null;
+        while (true) {
+            long key = BlockPos.asLong(x, y, z);
+            if (crossedCells != null) {
+                int version = snapshot.cellVersions().get(key);
+                if (!crossedCells.containsKey(key)) {
+                    crossedCells.put(key, version);
+                } else if (crossedCells.get(key) != version) {
+                    crossedCells.put(key, STALE); // Crossed in two different builds, so don't trust either
+                }
+            }
+            @Nullable IntArrayList cell = snapshot.cells().get(key);
+            if (cell != null) {
+                // Entities in more than one cell can be tested more than once, which gives the same result
+                for (int i = 0; i < cell.size(); i++) {
+                    Entity entity = snapshot.entities().get(cell.getInt(i));
+                    if (entity == source || entity.isInvisibleTo(source)) {
+                        continue;
+                    }
+                    Box box = snapshot.boxes().get(cell.getInt(i));
+                    Optional<Vec3d> hit = box.raycast(start, end);
+                    if (box.contains(start)) {
+                        if (closest >= 0) {
+                            hitEntity = entity;
+                            hitPos = hit.orElse(start);
+                            closest = 0;
+                        }
+                    } else if (hit.isPresent()) {
+                        double distance = start.squaredDistanceTo(hit.get());
+                        if (distance < closest || closest == 0) {
+                            if (entity.getRootVehicle() == rootVehicle) {
+                                // Only hit what the source is riding if there's nothing else
+                                if (closest == 0) {
+                                    hitEntity = entity;
+                                    hitPos = hit.get();
+                                }
+                                continue;
+                            }
+                            hitEntity = entity;
+                            hitPos = hit.get();
+                            closest = distance;
+                        }
+                    }
+                }
+            }
+            if (nextX > 1 && nextY > 1 && nextZ > 1) {
+                break;
+            }
+            if (nextX < nextY && nextX < nextZ) {
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY < nextZ) {
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        return hitEntity == null ? null : new EntityHitResult(hitEntity, hitPos);
+    }
+
+    /**
+     * Rebuild the grid if anything changed since the last build.
+     */
+    private synchronized void update(ServerWorld world) {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Snapshot previous = snapshot;
+        Long2ObjectOpenHashMap<IntArrayList> cells;
+        Long2IntOpenHashMap cellVersions;
+        List<Entity> entities;
+        List<Box> boxes;
+        if (retired != null) {
+            cells = retired.cells();
+            for (IntArrayList cell : cells.values()) {
+                cell.clear();
+                spareCells.add(cell);
+            }
+            cells.clear();
+            cellVersions = retired.cellVersions();
+            cellVersions.clear();
+            entities = retired.entities();
+            entities.clear();
+            boxes = retired.boxes();
+            boxes.clear();
+        } else {
+            cells = new Long2ObjectOpenHashMap<>();
+            cellVersions = new Long2IntOpenHashMap();
+            entities = new ArrayList<>();
+            boxes = new ArrayList<>();
+        }
+        for (Entity entity : world.iterateEntities()) {
+            if (entity == null) {
+                continue;
+            }
+            int index = entities.size();
+            Box box = entity.getBoundingBox().expand(entity.getTargetingMargin());
+            entities.add(entity);
+            boxes.add(box);
+            int maxX = MathHelper.floor(box.maxX / CELL_SIZE);
+            int maxY = MathHelper.floor(box.maxY / CELL_SIZE);
+            int maxZ = MathHelper.floor(box.maxZ / CELL_SIZE);
+            for (int x = MathHelper.floor(box.minX / CELL_SIZE); x <= maxX; x++) {
+                for (int y = MathHelper.floor(box.minY / CELL_SIZE); y <= maxY; y++) {
+                    for (int z = MathHelper.floor(box.minZ / CELL_SIZE); z <= maxZ; z++) {
+                        long key = BlockPos.asLong(x, y, z);
+                        @Nullable IntArrayList cell = cells.get(key);
+                        if (cell == null) {
+                            cell = spareCells.isEmpty() ? new IntArrayList() : spareCells.poll();
+                            cells.put(key, cell);
+                        }
+                        cell.add(index);
+                    }
+                }
+            }
+        }
+        int build = previous.build() + 1;
+        for (Long2ObjectMap.Entry<IntArrayList> entry : cells.long2ObjectEntrySet()) {
+            long key = entry.getLongKey();
+            @Nullable IntArrayList previousCell = previous.cells().get(key);
+            boolean same = previousCell != null && previousCell.size() == entry.getValue().size();
+            for (int i = 0; same && i < previousCell.size(); i++) {
+                int index = entry.getValue().getInt(i);
+                int previousIndex = previousCell.getInt(i);
+                same = entities.get(index) == previous.entities().get(previousIndex) && boxes.get(index).equals(previous.boxes().get(previousIndex));
+            }
+            cellVersions.put(key, same ? previous.cellVersions().get(key) : build);
+        }
+        retired = previous;
+        snapshot = new Snapshot(cells, cellVersions, entities, boxes, build);
+    }
+
+    /**
+     * One build of the grid. Never changed once it's published.
+     *
+     * @param cellVersions The build each non-empty cell's contents last changed in. Cells that aren't there are empty, with version 0.
+     * @param entities     The entities, indexed by the cells.
+     * @param boxes        Each entity's bounding box expanded by its targeting margin, like {@link net.minecraft.entity.projectile.ProjectileUtil#raycast} uses.
+     * @param build        How many builds came before this one, plus one.
+     */
+    private record Snapshot(Long2ObjectOpenHashMap<IntArrayList> cells, Long2IntOpenHashMap cellVersions, List<Entity> entities, List<Box> boxes, int build) {
+    }
+}
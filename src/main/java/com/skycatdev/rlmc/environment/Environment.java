@@ -4,11 +4,17 @@ package com.skycatdev.rlmc.environment;
 import com.mojang.datafixers.util.Either;
 import com.skycatdev.rlmc.Rlmc;
 import com.skycatdev.rlmc.command.EnvironmentSettings;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
-import net.minecraft.server.world.ServerWorld;
+import java.util.concurrent.atomic.AtomicReference;
 import net.minecraft.util.Pair;
 import org.jetbrains.annotations.Nullable;
 
@@ -18,7 +24,8 @@ import org.jetbrains.annotations.Nullable;
  * 1. Extend this class<br>
  * 2. Choose an action and observation type<br>
  * 3. Implement methods<br>
- * 4. Create a matching class in Python (see java_environment_wrapper.py)
+ * 4. Create a matching class in Python (see java_environment_wrapper.py), or describe the encoded action and observation
+ * with {@link Environment#getActionSchema()} and {@link Environment#getObservationSchema()} to use the generic one
  *
  * @param <A> Action type
  * @param <O> Observation type
@@ -30,9 +37,23 @@ public abstract class Environment<A, O> {
     private final Object[] taskLock = new Object[0];
     protected EnvironmentSettings settings;
     /**
-     * What to do on the next post-tick. Do not access outside the server thread or during a tick.
+     * What to do on the next post-tick. Only access on the server thread, or the thread post-ticking this environment in parallel, and not during the tick.
      */
     private @Nullable FutureTask<?> postTick;
+    /**
+     * Whether {@link Environment#postTick} is for a step, rather than a reset. Same access rules as {@link Environment#postTick}.
+     */
+    private boolean postTickIsStep;
+    /**
+     * Whether the post-tick task is running in {@link com.skycatdev.rlmc.ParallelPostTick}. Only access from the thread post-ticking.
+     */
+    private boolean postTickingInParallel;
+    /**
+     * Side effects held back until the parallel post-tick phase is over.
+     *
+     * @see Environment#runAfterPostTick(Runnable)
+     */
+    private final List<Runnable> deferred = new ArrayList<>();
     /**
      * True when {@link Environment#close()} has been called at least once. Synchronize on {@link Environment#closedLock} first.
      */
@@ -43,6 +64,31 @@ public abstract class Environment<A, O> {
      */
     private boolean paused;
     private @Nullable Either<Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>>, FutureTask<ResetTuple<O>>> task;
+    /**
+     * Where steps and resets are requested from when using shared memory instead of Py4J. Synchronize on {@link Environment#taskLock} first.
+     */
+    private volatile SharedMemoryTransport.@Nullable Slot transportSlot;
+    /**
+     * The last shared memory request that was picked up. Synchronize on {@link Environment#taskLock} first.
+     */
+    private int lastTransportRequest;
+    /**
+     * The action of the step in progress, kept to repeat it when frame skipping. Synchronize on {@link Environment#taskLock} first.
+     */
+    private @Nullable A stepAction;
+    /**
+     * How many more ticks the step in progress will repeat its action for. Synchronize on {@link Environment#taskLock} first.
+     *
+     * @see EnvironmentSettings#getFrameSkip()
+     */
+    private int repeatTicksRemaining;
+    /**
+     * Whether there's a task or a repeated tick waiting for the next tick. Kept so that the tick gate doesn't need to lock.
+     * Only write while synchronized on {@link Environment#taskLock}.
+     *
+     * @see Environment#updateWaitingForTick()
+     */
+    private volatile boolean waitingForTick;
 
     protected Environment(EnvironmentSettings environmentSettings) {
         this.settings = environmentSettings;
@@ -54,8 +100,49 @@ public abstract class Environment<A, O> {
             closed = true;
             Rlmc.removeEnvironment(this);
         }
+        synchronized (taskLock) {
+            if (transportSlot != null) {
+                transportSlot.release();
+                transportSlot = null;
+            }
+        }
     }
 
+    /**
+     * Decode an action sent as bytes, like the ones sent through the shared memory transport.
+     *
+     * @param buffer A little-endian buffer holding {@link Environment#getEncodedActionSize()} bytes.
+     * @return The decoded action.
+     */
+    protected abstract A decodeAction(ByteBuffer buffer);
+
+    /**
+     * @return The number of bytes in an encoded action.
+     */
+    public abstract int getEncodedActionSize();
+
+    /**
+     * @return The most recent observation, encoded. May be reused, so it's only valid until the next step or reset.
+     */
+    public abstract byte[] getEncodedObservation();
+
+    /**
+     * @return The number of bytes in an encoded observation.
+     */
+    public abstract int getEncodedObservationSize();
+
+    /**
+     * @return How an encoded action is laid out, see {@link Environment#decodeAction(ByteBuffer)}. Its size is {@link Environment#getEncodedActionSize()}.
+     */
+    @SuppressWarnings("unused") // Used by space_schema.py
+    public abstract SpaceSchema getActionSchema();
+
+    /**
+     * @return How an encoded observation is laid out, see {@link Environment#getEncodedObservation()}. Its size is {@link Environment#getEncodedObservationSize()}.
+     */
+    @SuppressWarnings("unused") // Used by space_schema.py
+    public abstract SpaceSchema getObservationSchema();
+
     public EnvironmentSettings getSettings() {
         return settings;
     }
@@ -79,16 +166,48 @@ public abstract class Environment<A, O> {
      *
      * @param action The action to take during this step.
      * @return A pair of tasks. The first will be executed before the tick, the second will be executed after the tick. These should be blocking.
+     * When frame skipping, the second is executed after the last tick of the step, and should include {@link Environment#repeatTick()}'s results.
      */
     protected abstract Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>> innerStep(A action);
 
+    /**
+     * @return {@code true} if the next post-tick is a step, and this environment supports running it off the server thread.
+     * @see Environment#supportsParallelPostTick()
+     */
+    public boolean canPostTickInParallel() {
+        return postTick != null && postTickIsStep && supportsParallelPostTick();
+    }
+
     public boolean isClosed() {
         synchronized (closedLock) {
             return closed;
         }
     }
 
-    public abstract boolean isIn(ServerWorld world);
+    /**
+     * Step and reset through shared memory instead of Py4J. Steps and resets are then picked up on the server thread whenever
+     * this environment is asked if it's {@link Environment#waitingForTick()}.
+     *
+     * @return The slot to share with Python.
+     * @see SharedMemoryTransport
+     */
+    @SuppressWarnings("unused") // Used by entrypoint.py
+    public SharedMemoryTransport.Slot openSharedMemory() {
+        synchronized (taskLock) {
+            if (transportSlot == null) {
+                transportSlot = SharedMemoryTransport.get().openSlot(getEncodedActionSize(), getEncodedObservationSize());
+                lastTransportRequest = transportSlot.getRequest();
+            }
+            return transportSlot;
+        }
+    }
+
+    /**
+     * @return Whether the post-tick task is running off the server thread, in {@link com.skycatdev.rlmc.ParallelPostTick}.
+     */
+    protected boolean isPostTickingInParallel() {
+        return postTickingInParallel;
+    }
 
     public boolean isPaused() {
         synchronized (pausedLock) {
@@ -117,11 +236,59 @@ public abstract class Environment<A, O> {
      */
     public void postTick() {
         if (postTick != null) {
+            synchronized (taskLock) {
+                if (repeatTicksRemaining > 0) {
+                    if (!repeatTick()) {
+                        return; // Keep going next tick
+                    }
+                    repeatTicksRemaining = 0; // The episode ended, so finish the step early
+                }
+                stepAction = null;
+                updateWaitingForTick();
+            }
             postTick.run();
             postTick = null;
         }
     }
 
+    /**
+     * Called on the server thread right before {@link Environment#postTickInParallel()}. Look up anything the post-tick tasks read
+     * that can only be read on the server thread, like chunks (see {@link ChunkCache}).
+     */
+    public void prepareParallelPostTick() {
+    }
+
+    /**
+     * Run the post-tick tasks as part of {@link com.skycatdev.rlmc.ParallelPostTick}, deferring side effects until {@link Environment#runDeferred()}.
+     * Call {@link Environment#prepareParallelPostTick()} first.
+     */
+    public void postTickInParallel() {
+        postTickingInParallel = true;
+        try {
+            postTick();
+        } finally {
+            postTickingInParallel = false;
+        }
+    }
+
+    /**
+     * Called before each tick of a step after the first when frame skipping. Should re-apply the action if it doesn't last on its own.
+     *
+     * @param action The action being repeated.
+     */
+    protected void preRepeatTick(A action) {
+    }
+
+    /**
+     * Called after each tick of a step except the last when frame skipping. Should be cheap - nothing is returned to Python from here.
+     * Anything that needs to be kept, like reward, should be saved for the step's post-tick task.
+     *
+     * @return {@code true} if the episode ended, in which case the step finishes now instead of repeating any more.
+     */
+    protected boolean repeatTick() {
+        return false;
+    }
+
     /**
      * Tasks to be done before a tick. Usually should not be overridden. Only call if {@link Environment#waitingForTick()} is true.
      *
@@ -132,12 +299,19 @@ public abstract class Environment<A, O> {
         if (shouldTick()) { // Check if we are paused or closed or something
             synchronized (taskLock) {
                 if (task == null) {
-                    Rlmc.LOGGER.warn("Task was null in pre-tick, please report this!");
+                    if (repeatTicksRemaining > 0 && stepAction != null) { // Still repeating a step
+                        repeatTicksRemaining--;
+                        preRepeatTick(stepAction);
+                    } else {
+                        Rlmc.LOGGER.warn("Task was null in pre-tick, please report this!");
+                    }
                 } else {
                     var stepOpt = task.left();
                     if (stepOpt.isPresent()) { // If we're stepping
                         var step = stepOpt.get();
                         postTick = step.getRight(); // Remember the post-step tasks
+                        postTickIsStep = true;
+                        repeatTicksRemaining = settings.getFrameSkip() - 1;
                         if (step.getLeft() != null) {
                             step.getLeft().run(); // Do the pre-step tasks
                         }
@@ -145,9 +319,12 @@ public abstract class Environment<A, O> {
                         var resetOpt = task.right();
                         assert resetOpt.isPresent() : "Sanity check failed - left was gone but so was right?"; // Guess I'm insane
                         postTick = resetOpt.get();
+                        postTickIsStep = false;
+                        repeatTicksRemaining = 0;
                     }
                     task = null;
                 }
+                updateWaitingForTick();
             }
         }
     }
@@ -162,6 +339,25 @@ public abstract class Environment<A, O> {
      */
     @SuppressWarnings("unused") // Used by java_environment_wrapper.py
     public ResetTuple<O> reset(@Nullable Integer seed, @Nullable Map<String, Object> options) {
+        Future<ResetTuple<O>> resetTask = requestReset(seed, options);
+        try {
+            ResetTuple<O> ret = resetTask.get();
+            Rlmc.LOGGER.trace("Environment \"{}\" reset received, returning.", getUniqueEnvName());
+            return ret;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new EnvironmentException(e);
+        }
+    }
+
+    /**
+     * Request a reset without waiting for it. Usually should not be overridden.
+     *
+     * @param seed    The seed to use for random operations.
+     * @param options The options to use.
+     * @return A future that completes with the reset information after the reset is done.
+     * @see Environment#reset(Integer, Map)
+     */
+    public Future<ResetTuple<O>> requestReset(@Nullable Integer seed, @Nullable Map<String, Object> options) {
         unpause();
         Rlmc.LOGGER.trace("Resetting environment \"{}\" (reset called)", getUniqueEnvName());
         FutureTask<ResetTuple<O>> resetTask;
@@ -170,21 +366,105 @@ public abstract class Environment<A, O> {
                 if (task == null) {
                     resetTask = new FutureTask<>(() -> innerReset(seed, options));
                     task = Either.right(resetTask);
+                    updateWaitingForTick();
                     Rlmc.LOGGER.trace("Environment \"{}\" initialized. Waiting for reset.", getUniqueEnvName());
                 } else {
                     throw new EnvironmentException("Expected task to be null, but it wasn't. Did you call reset/step from two different threads?");
                 }
             }
         }
-        try {
-            ResetTuple<O> ret = resetTask.get();
-            Rlmc.LOGGER.trace("Environment \"{}\" reset received, returning.", getUniqueEnvName());
-            return ret;
-        } catch (InterruptedException | ExecutionException e) {
-            throw new EnvironmentException(e);
+        return resetTask;
+    }
+
+    /**
+     * Pick up a new shared memory request, if there is one. Synchronize on {@link Environment#taskLock} first.
+     */
+    private void pollTransport() {
+        SharedMemoryTransport.Slot slot = transportSlot;
+        if (slot == null || task != null || repeatTicksRemaining > 0) {
+            return;
+        }
+        int request = slot.getRequest();
+        if (request == lastTransportRequest) {
+            return;
+        }
+        lastTransportRequest = request;
+        switch (slot.getCommand()) {
+            case SharedMemoryTransport.COMMAND_STEP -> {
+                if (isPaused()) {
+                    // A paused environment doesn't tick, so the step would never be answered
+                    Rlmc.LOGGER.warn("Environment \"{}\" received a shared memory step while paused.", getUniqueEnvName());
+                    slot.fail(request);
+                    return;
+                }
+                Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>> innerStep;
+                try {
+                    A action = decodeAction(slot.getAction());
+                    innerStep = innerStep(action);
+                    stepAction = action;
+                } catch (RuntimeException e) {
+                    Rlmc.LOGGER.error("Environment \"{}\" could not start a shared memory step.", getUniqueEnvName(), e);
+                    slot.fail(request);
+                    return;
+                }
+                FutureTask<StepTuple<O>> postTick = innerStep.getRight();
+                task = Either.left(new Pair<>(innerStep.getLeft(), new FutureTask<>(() -> {
+                    postTick.run();
+                    try {
+                        StepTuple<O> stepTuple = postTick.get();
+                        slot.complete(request, stepTuple.reward(), stepTuple.terminated(), stepTuple.truncated(), getEncodedObservation());
+                        return stepTuple;
+                    } catch (ExecutionException | RuntimeException e) {
+                        Rlmc.LOGGER.error("Environment \"{}\" failed a shared memory step.", getUniqueEnvName(), e);
+                        slot.fail(request);
+                        throw e;
+                    }
+                })));
+            }
+            case SharedMemoryTransport.COMMAND_RESET -> {
+                unpause();
+                @Nullable Integer seed = slot.getSeed();
+                task = Either.right(new FutureTask<>(() -> {
+                    try {
+                        ResetTuple<O> resetTuple = innerReset(seed, null);
+                        slot.complete(request, 0, false, false, getEncodedObservation());
+                        return resetTuple;
+                    } catch (RuntimeException e) {
+                        Rlmc.LOGGER.error("Environment \"{}\" failed a shared memory reset.", getUniqueEnvName(), e);
+                        slot.fail(request);
+                        throw e;
+                    }
+                }));
+            }
+            default -> {
+                Rlmc.LOGGER.warn("Environment \"{}\" received unknown shared memory command {}.", getUniqueEnvName(), slot.getCommand());
+                slot.fail(request);
+            }
+        }
+    }
+
+    /**
+     * Do something that isn't safe to do from a post-tick running in parallel, like changing shared state or sending packets.
+     * It's run right away unless this environment is post-ticking in parallel, in which case it's run on the server thread afterward.
+     */
+    protected void runAfterPostTick(Runnable sideEffect) {
+        if (postTickingInParallel) {
+            deferred.add(sideEffect);
+        } else {
+            sideEffect.run();
         }
     }
 
+    /**
+     * Run the side effects deferred while post-ticking in parallel. Call on the server thread.
+     */
+    public void runDeferred() {
+        for (Runnable sideEffect : deferred) {
+            sideEffect.run();
+        }
+        deferred.clear();
+    }
+
     protected boolean shouldTick() {
         return !isClosed() && !isPaused();
     }
@@ -198,21 +478,156 @@ public abstract class Environment<A, O> {
      */
     @SuppressWarnings("unused") // Used by java_environment_wrapper.py
     public StepTuple<O> step(A action) {
-        FutureTask<StepTuple<O>> stepPostTick;
+        Future<StepTuple<O>> stepPostTick = requestStep(action);
+        try {
+            return stepPostTick.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new EnvironmentException("There was a problem waiting for stepPostTick.", e);
+        }
+    }
+
+    /**
+     * Request a step with an encoded action, so that it takes one call instead of building the action over Py4J. Blocking.
+     *
+     * @param action The action to take during the step, encoded the way {@link Environment#decodeAction(ByteBuffer)} expects.
+     * @return Step information.
+     */
+    @SuppressWarnings("unused") // Used by java_environment_wrapper.py
+    public StepTuple<O> step(byte[] action) {
+        if (action.length != getEncodedActionSize()) {
+            throw new EnvironmentException("Expected an encoded action of " + getEncodedActionSize() + " bytes, got " + action.length + ".");
+        }
+        Future<StepTuple<O>> stepPostTick = requestStep(action);
+        try {
+            return stepPostTick.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new EnvironmentException("There was a problem waiting for stepPostTick.", e);
+        }
+    }
+
+    /**
+     * Request a step with an encoded action without waiting for it. The action is copied and decoded on the server thread right
+     * before the tick, since {@link Environment#decodeAction(ByteBuffer)} may reuse the action it decodes into.
+     *
+     * @param action The action to take during the step, encoded the way {@link Environment#decodeAction(ByteBuffer)} expects.
+     * @return A future that completes with the step information after the step is done.
+     */
+    public Future<StepTuple<O>> requestStep(byte[] action) {
+        return requestStep(action, false, null);
+    }
+
+    /**
+     * Request a step with an encoded action without waiting for it, and reset right after it in the same tick if the episode ends.
+     * This saves the extra tick a separate reset would take. The reset happens on the server thread, after any parallel post-ticks.
+     *
+     * @param action   The action to take during the step, encoded the way {@link Environment#decodeAction(ByteBuffer)} expects.
+     * @param truncate Whether to truncate the episode after this step no matter what, like a time limit would.
+     * @return A future that completes with the step information, and the observation the episode ended with if it did, once any reset is done.
+     * @see Environment#requestStep(byte[])
+     */
+    public Future<AutoResetStepTuple<O>> requestAutoResetStep(byte[] action, boolean truncate) {
+        CompletableFuture<AutoResetStepTuple<O>> autoReset = new CompletableFuture<>();
+        requestStep(action, truncate, autoReset);
+        return autoReset;
+    }
+
+    private Future<StepTuple<O>> requestStep(byte[] action, boolean truncate, @Nullable CompletableFuture<AutoResetStepTuple<O>> autoReset) {
+        if (action.length != getEncodedActionSize()) {
+            throw new EnvironmentException("Expected an encoded action of " + getEncodedActionSize() + " bytes, got " + action.length + ".");
+        }
+        byte[] encoded = action.clone();
+        synchronized (taskLock) {
+            if (task == null) {
+                // The step's own tasks can't be made until the action is decoded, so the pre-tick makes them
+                AtomicReference<@Nullable FutureTask<StepTuple<O>>> innerPostTick = new AtomicReference<>();
+                FutureTask<?> preTick = new FutureTask<>(() -> {
+                    A decoded = decodeAction(ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN));
+                    Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>> innerStep = innerStep(decoded);
+                    stepAction = decoded; // The pre-tick runs synchronized on taskLock
+                    innerPostTick.set(innerStep.getRight());
+                    if (innerStep.getLeft() != null) {
+                        innerStep.getLeft().run();
+                        innerStep.getLeft().get(); // Rethrow anything it threw
+                    }
+                    return null;
+                });
+                FutureTask<StepTuple<O>> postTick = new FutureTask<>(() -> {
+                    try {
+                        preTick.get(); // Rethrow anything decoding threw
+                        FutureTask<StepTuple<O>> inner = Objects.requireNonNull(innerPostTick.get());
+                        inner.run();
+                        StepTuple<O> stepTuple = inner.get();
+                        if (autoReset != null) {
+                            finishAutoReset(stepTuple, truncate, autoReset);
+                        }
+                        return stepTuple;
+                    } catch (Exception e) {
+                        if (autoReset != null) {
+                            autoReset.completeExceptionally(e);
+                        }
+                        throw e;
+                    }
+                });
+                task = Either.left(new Pair<>(preTick, postTick));
+                updateWaitingForTick();
+                return postTick;
+            } else {
+                throw new EnvironmentException("Expected null task once synchronized in Environment#step. Did you call reset/step from two different threads?");
+            }
+        }
+    }
+
+    /**
+     * Complete an auto-reset step, resetting first if the episode ended. See {@link Environment#requestAutoResetStep(byte[], boolean)}.
+     */
+    private void finishAutoReset(StepTuple<O> stepTuple, boolean truncate, CompletableFuture<AutoResetStepTuple<O>> autoReset) {
+        StepTuple<O> finished = truncate && !stepTuple.truncated() ?
+                new StepTuple<>(stepTuple.observation(), stepTuple.reward(), stepTuple.terminated(), true, stepTuple.info()) :
+                stepTuple;
+        if (!finished.terminated() && !finished.truncated()) {
+            autoReset.complete(new AutoResetStepTuple<>(finished, null));
+            return;
+        }
+        byte[] terminalObservation = getEncodedObservation().clone(); // Reused by the reset
+        // Resetting changes the world, so it can't happen alongside other environments
+        runAfterPostTick(() -> {
+            try {
+                innerReset(null, null);
+                autoReset.complete(new AutoResetStepTuple<>(finished, terminalObservation));
+            } catch (RuntimeException e) {
+                Rlmc.LOGGER.error("Environment \"{}\" failed to reset after a step.", getUniqueEnvName(), e);
+                autoReset.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Request a step without waiting for it. Usually should not be overridden.
+     *
+     * @param action The action to take during the step.
+     * @return A future that completes with the step information after the step is done.
+     * @see Environment#step(A)
+     */
+    public Future<StepTuple<O>> requestStep(A action) {
         synchronized (taskLock) {
             if (task == null) {
                 Pair<@Nullable FutureTask<?>, FutureTask<StepTuple<O>>> innerStep = innerStep(action);
-                stepPostTick = innerStep.getRight();
                 task = Either.left(innerStep);
+                stepAction = action;
+                updateWaitingForTick();
+                return innerStep.getRight();
             } else {
                 throw new EnvironmentException("Expected null task once synchronized in Environment#step. Did you call reset/step from two different threads?");
             }
         }
-        try {
-            return stepPostTick.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new EnvironmentException("There was a problem waiting for stepPostTick.", e);
-        }
+    }
+
+    /**
+     * @return {@code true} if a step's post-tick tasks only read the world, and send everything else through {@link Environment#runAfterPostTick(Runnable)},
+     * so that they can run alongside other environments.
+     */
+    protected boolean supportsParallelPostTick() {
+        return false;
     }
 
     public void unpause() {
@@ -222,9 +637,23 @@ public abstract class Environment<A, O> {
         Rlmc.LOGGER.trace("Environment \"{}\" unpaused.", getUniqueEnvName());
     }
 
+    /**
+     * Synchronize on {@link Environment#taskLock} first.
+     */
+    private void updateWaitingForTick() {
+        waitingForTick = task != null || repeatTicksRemaining > 0;
+    }
+
+    /**
+     * Doesn't lock unless there might be a shared memory request to pick up, so it's cheap to call every tick.
+     */
     public boolean waitingForTick() {
-        synchronized (taskLock) {
-            return task != null;
+        if (!waitingForTick && transportSlot != null) {
+            synchronized (taskLock) {
+                pollTransport();
+                updateWaitingForTick();
+            }
         }
+        return waitingForTick;
     }
 }
@@ -1,12 +1,12 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.environment;
 
-import com.skycatdev.rlmc.NameGenerator;
 import com.skycatdev.rlmc.Rlmc;
 import com.skycatdev.rlmc.SpreadEntitiesHelper;
 import com.skycatdev.rlmc.command.EnvironmentSettings;
 import com.skycatdev.rlmc.network.DebugVector;
 import com.skycatdev.rlmc.network.DrawVectorPayload;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -16,15 +16,18 @@ import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.SpawnReason;
 import net.minecraft.entity.mob.MobEntity;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.Items;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.stat.Stats;
 import net.minecraft.structure.StructurePlacementData;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.hit.EntityHitResult;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
@@ -33,10 +36,36 @@ import net.minecraft.util.math.random.Random;
 import org.jetbrains.annotations.Nullable;
 
 public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvironment.Observation> {
+    /**
+     * Reset option that makes a new world and arena instead of restoring the current one.
+     */
+    public static final String NEW_LAYOUT_OPTION = "new_layout";
+    /**
+     * How far past the spawn points the arena snapshot reaches.
+     */
+    protected static final int ARENA_RADIUS = 24;
+    /**
+     * How far from the origin a new layout's first spawn can be, if {@link FightEnemyEnvironment#getBounds()} allows it.
+     */
+    protected static final int MAX_SPREAD = 75;
+    /**
+     * How far the agent can spawn from the enemy, plus one.
+     */
+    protected static final int SPAWN_MARGIN = 6;
     public final int maxEnemyDistance = 300;
     @Nullable protected MobEntity enemy;
     protected EntityType<? extends MobEntity> enemyType;
     @Nullable private Identifier structure = null;
+    /**
+     * The arena as it was before the first episode in the current world. Null until then, and after the world is deleted.
+     */
+    @Nullable protected ArenaSnapshot arenaSnapshot;
+    /**
+     * The box {@link FightEnemyEnvironment#arenaSnapshot} covers. Spawns are picked inside it after restoring.
+     */
+    @Nullable protected BlockBox arenaBox;
+    @Nullable protected BlockPos enemySpawn;
+    @Nullable protected BlockPos agentSpawn;
 
     public FightEnemyEnvironment(EnvironmentSettings settings, ServerPlayerEntity agent, EntityType<? extends MobEntity> enemyType) {
         super(settings, agent, 20, 20, 3, 3);
@@ -50,7 +79,13 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
 
     public static @Nullable Future<FightEnemyEnvironment> makeAndConnect(EnvironmentSettings environmentSettings, String agentName, MinecraftServer server, EntityType<? extends MobEntity> entityType, @Nullable Identifier structure) {
         Rlmc.LOGGER.debug("Creating fight enemy env for \"{}\"", agentName);
-        @Nullable CompletableFuture<ServerPlayerEntity> agentFuture = createPlayerAgent(agentName, server, Vec3d.ZERO, server.getOverworld().getRegistryKey());
+        return makeAndConnect(environmentSettings, createPlayerAgent(agentName, server, Vec3d.ZERO, server.getOverworld().getRegistryKey()), entityType, structure);
+    }
+
+    /**
+     * @param agentFuture The agent to use, like one from {@link AgentPool#takeAgent(MinecraftServer)}.
+     */
+    public static @Nullable Future<FightEnemyEnvironment> makeAndConnect(EnvironmentSettings environmentSettings, @Nullable CompletableFuture<ServerPlayerEntity> agentFuture, EntityType<? extends MobEntity> entityType, @Nullable Identifier structure) {
         if (agentFuture != null) {
             Function<ServerPlayerEntity, FightEnemyEnvironment> environmentFuture = agent -> {
                 FightEnemyEnvironment environment;
@@ -72,13 +107,13 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
     @Override
     public void close() {
         super.close();
-        Objects.requireNonNull(worldHandle).delete();
+        deleteCurrentWorld();
     }
 
     @Override
     public Future<Future<? extends Environment<FutureActionPack, Observation>>> makeAnother() {
         Rlmc.LOGGER.trace("Making another FightEnemyEnvironment...");
-        FutureTask<Future<? extends Environment<FutureActionPack, Observation>>> futureTask = new FutureTask<>(() -> Objects.requireNonNull(makeAndConnect(settings, NameGenerator.newName(getWorld().getServer().getPlayerManager().getPlayerList()), getWorld().getServer(), enemyType, structure)));
+        FutureTask<Future<? extends Environment<FutureActionPack, Observation>>> futureTask = new FutureTask<>(() -> Objects.requireNonNull(makeAndConnect(settings, AgentPool.takeAgent(server), enemyType, structure)));
         Rlmc.runBeforeNextTick(futureTask);
         return futureTask;
     }
@@ -89,28 +124,51 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
     }
 
 
-    @SuppressWarnings("unused") // used by wrapped_fight_enemy_environment.py
+    @Override
+    protected int getEncodedFrameSize() {
+        return super.getEncodedFrameSize() + (getObservationComponents().contains(ObservationComponent.ENEMY) ? Observation.ENEMY_BYTES : 0);
+    }
+
+    @Override
+    protected void describeObservation(SpaceSchema.Builder builder) {
+        super.describeObservation(builder);
+        if (getObservationComponents().contains(ObservationComponent.ENEMY)) {
+            builder.box("enemy", SpaceSchema.DType.FLOAT32, new int[]{3}, -maxEnemyDistance, maxEnemyDistance);
+        }
+    }
+
+    /**
+     * Only the vector to the enemy, since that's all the policy has been trained with.
+     */
+    @Override
+    protected Set<ObservationComponent> getDefaultObservationComponents() {
+        return EnumSet.of(ObservationComponent.ENEMY);
+    }
+
     public int getMaxEnemyDistance() {
         return maxEnemyDistance;
     }
 
     @Override
     protected Observation getObservation() {
-        return Observation.fromBasic(BasicPlayerObservation.fromPlayer(agent, xRaycasts, yRaycasts, getRaycastDistance(), Math.PI / 2, history), Objects.requireNonNull(enemy), maxEnemyDistance);
+        Observation observation = Observation.fromBasic(BasicPlayerObservation.fromPlayer(raycaster, getChunks(), agent, xRaycasts, yRaycasts, getRaycastDistance(), Math.PI / 2, history, getOrigin(), getObservationComponents()), Objects.requireNonNull(enemy), maxEnemyDistance);
+        runAfterPostTick(observation::drawVecToEnemy);
+        return observation;
     }
 
     @Override
     protected double getReward(BasicPlayerObservation observation) {
         int damageDealt = agent.getStatHandler().getStat(Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_DEALT));
         int damageTaken = agent.getStatHandler().getStat(Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_TAKEN));
-        agent.getStatHandler().setStat(agent, Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_DEALT), 0);
-        agent.getStatHandler().setStat(agent, Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_TAKEN), 0);
+        runAfterPostTick(() -> {
+            agent.getStatHandler().setStat(agent, Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_DEALT), 0);
+            agent.getStatHandler().setStat(agent, Stats.CUSTOM.getOrCreateStat(Stats.DAMAGE_TAKEN), 0);
+        });
         return enemy != null && enemy.isDead() ? (0.25 - damageTaken) : (damageDealt - damageTaken) / 300d;
     }
 
     @Override
     protected void innerPreReset(@Nullable Integer seed, @Nullable Map<String, Object> options) {
-        deleteCurrentWorld();
         PlayerInventory inventory = agent.getInventory();
         inventory.clear();
         inventory.offer(new ItemStack(Items.DIAMOND_SWORD), true);
@@ -119,25 +177,73 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
             enemy.discard();
         }
         Random random = Random.create();
-        var spawnLocations = Objects.requireNonNull(SpreadEntitiesHelper.getSpreadLocations(getWorld(), BlockPos.ORIGIN, new Vec3i(75, 300, 75), new Vec3i(1, 0, 1), new Vec3i(5, 5, 5), random));
-        BlockPos enemyBlock = spawnLocations.getLeft();
-        Vec3d enemyPos = enemyBlock.toCenterPos();
-        BlockPos playerBlock = spawnLocations.getRight();
-        Vec3d playerPos = playerBlock.toCenterPos();
-        enemy = enemyType.spawn(getWorld(), enemyBlock, SpawnReason.COMMAND);
+        if (arenaSnapshot == null || arenaBox == null || enemySpawn == null || agentSpawn == null || (options != null && Boolean.TRUE.equals(options.get(NEW_LAYOUT_OPTION)))) {
+            deleteCurrentWorld();
+            ServerWorld world = getWorld();
+            @Nullable BlockBox bounds = getBounds();
+            int spread = MAX_SPREAD;
+            if (bounds != null) { // Keep the whole arena in the cell
+                spread = Math.max(Math.min(spread, Math.min(bounds.getBlockCountX(), bounds.getBlockCountZ()) / 2 - ARENA_RADIUS - SPAWN_MARGIN), 0);
+            }
+            var spawnLocations = Objects.requireNonNull(SpreadEntitiesHelper.getSpreadLocations(world, getOrigin(), new Vec3i(spread, 300, spread), new Vec3i(1, 0, 1), new Vec3i(5, 5, 5), random));
+            enemySpawn = spawnLocations.getLeft();
+            agentSpawn = spawnLocations.getRight();
+            if (structure != null) {
+                var optTemplate = world.getStructureTemplateManager().getTemplate(structure);
+                if (optTemplate.isPresent()) {
+                    optTemplate.get().place(world, agentSpawn.subtract(new Vec3i(6, 1, 6)), agentSpawn, new StructurePlacementData(), random, 0);
+                } else {
+                    Rlmc.LOGGER.warn("Tried to place non-existent structure {}, skipping.", structure);
+                }
+            }
+            arenaBox = clamp(BlockBox.create(enemySpawn, agentSpawn).expand(ARENA_RADIUS), bounds);
+            arenaSnapshot = ArenaSnapshot.capture(world, arenaBox, entity -> !(entity instanceof PlayerEntity));
+        } else {
+            int changed = arenaSnapshot.restore(getWorld());
+            Rlmc.LOGGER.trace("Restored {} blocks for fight enemy env \"{}\"", changed, getUniqueEnvName());
+            if (structure == null) { // The agent has to start on the structure, so only arenas without one are re-laid out
+                resampleSpawns(arenaBox, random);
+            }
+        }
+        Vec3d enemyPos = enemySpawn.toCenterPos();
+        Vec3d playerPos = agentSpawn.toCenterPos();
+        enemy = enemyType.spawn(getWorld(), enemySpawn, SpawnReason.COMMAND);
         if (enemy == null) {
             throw new NullPointerException("Enemy was null, expected non-null");
         }
         enemy.teleport(getWorld(), enemyPos.getX(), enemyPos.getY(), enemyPos.getZ(), Set.of(), (random.nextFloat() % 180) - 180, (random.nextFloat() % 90) - 90);
         agent.teleport(getWorld(), playerPos.getX(), playerPos.getY(), playerPos.getZ(), Set.of(), (random.nextFloat() % 180) - 180,  (random.nextFloat() % 90) - 90);
-        if (structure != null) {
-            var optTemplate = getWorld().getStructureTemplateManager().getTemplate(structure);
-            if (optTemplate.isPresent()) {
-                optTemplate.get().place(getWorld(), playerBlock.subtract(new Vec3i(6, 1, 6)), playerBlock, new StructurePlacementData(), random, 0);
-            } else {
-                Rlmc.LOGGER.warn("Tried to place non-existent structure {}, skipping.", structure);
-            }
+    }
+
+    /**
+     * Pick new spawns inside the restored arena, so that episodes don't all start the same way without making a new world.
+     * Keeps the old spawns if no new ones fit in the arena.
+     */
+    protected void resampleSpawns(BlockBox box, Random random) {
+        Vec3i maxFromCenter = new Vec3i(Math.max(box.getBlockCountX() / 2 - SPAWN_MARGIN, 0), 0, Math.max(box.getBlockCountZ() / 2 - SPAWN_MARGIN, 0));
+        @Nullable var spawnLocations = SpreadEntitiesHelper.getSpreadLocations(getWorld(), box.getCenter(), maxFromCenter, new Vec3i(1, 0, 1), new Vec3i(5, 5, 5), random);
+        if (spawnLocations != null && box.contains(spawnLocations.getLeft()) && box.contains(spawnLocations.getRight())) {
+            enemySpawn = spawnLocations.getLeft();
+            agentSpawn = spawnLocations.getRight();
+        }
+    }
+
+    /**
+     * @return The part of the box inside the bounds, or the box if there are no bounds.
+     */
+    protected static BlockBox clamp(BlockBox box, @Nullable BlockBox bounds) {
+        if (bounds == null) {
+            return box;
         }
+        return new BlockBox(Math.max(box.getMinX(), bounds.getMinX()), Math.max(box.getMinY(), bounds.getMinY()), Math.max(box.getMinZ(), bounds.getMinZ()),
+                Math.min(box.getMaxX(), bounds.getMaxX()), Math.min(box.getMaxY(), bounds.getMaxY()), Math.min(box.getMaxZ(), bounds.getMaxZ()));
+    }
+
+    @Override
+    protected void deleteCurrentWorld() {
+        super.deleteCurrentWorld();
+        arenaSnapshot = null; // It was of the deleted world
+        arenaBox = null;
     }
 
     @Override
@@ -161,10 +267,23 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
     }
 
     public static class Observation extends BasicPlayerObservation {
+        /**
+         * Bytes for the encoded vector to the enemy: yaw, pitch, distance.
+         */
+        public static final int ENEMY_BYTES = 3 * Float.BYTES;
+        public static final Set<ObservationComponent> ALL_COMPONENTS_AND_ENEMY = EnumSet.allOf(ObservationComponent.class);
         public final Vec3d vecToEnemy;
 
         public Observation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities, ServerPlayerEntity self, FutureActionPack.History history, Vec3d vecToEnemy) {
-            super(blocks, entities, self, history);
+            this(blocks, entities, self, history, BlockPos.ORIGIN, vecToEnemy);
+        }
+
+        public Observation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities, ServerPlayerEntity self, FutureActionPack.History history, BlockPos origin, Vec3d vecToEnemy) {
+            this(blocks, entities, self, history, origin, ALL_COMPONENTS_AND_ENEMY, vecToEnemy);
+        }
+
+        public Observation(List<BlockHitInfo> blocks, List<@Nullable EntityHitResult> entities, ServerPlayerEntity self, FutureActionPack.History history, BlockPos origin, Set<ObservationComponent> components, Vec3d vecToEnemy) {
+            super(blocks, entities, self, history, origin, components);
             this.vecToEnemy = vecToEnemy;
         }
 
@@ -177,26 +296,53 @@ public class FightEnemyEnvironment extends BasicPlayerEnvironment<FightEnemyEnvi
             double pitch = MathHelper.wrapDegrees(Math.toDegrees(pitchRad));
             double dist = Math.clamp(posVec.length(), 0, maxEnemyDistance);
             Vec3d vecToEnemy = new Vec3d(yaw, pitch, dist);
+            return new Observation(
+                    basic.blocks(),
+                    basic.entities(),
+                    basic.self(),
+                    basic.history(),
+                    basic.origin(),
+                    basic.components(),
+                    vecToEnemy
+            );
+        }
+
+        /**
+         * Show the vector to the enemy to nearby players with the mod. Sends packets, so call on the server thread.
+         */
+        public void drawVecToEnemy() {
             // TODO: Setting to disable rendering
-            basic.self().getServerWorld().getPlayers((player) -> player.distanceTo(basic.self()) <= 100).forEach((player) -> {
+            self().getServerWorld().getPlayers((player) -> player.distanceTo(self()) <= 100).forEach((player) -> {
                 if (ServerPlayNetworking.canSend(player, DrawVectorPayload.PACKET_ID)) {
-                    ServerPlayNetworking.send(player, new DrawVectorPayload(new DebugVector(basic.self().getEyePos().toVector3f(),
+                    ServerPlayNetworking.send(player, new DrawVectorPayload(new DebugVector(self().getEyePos().toVector3f(),
                                     vecToEnemy.toVector3f(),
                                     DebugVector.Mode.ROTATION,
                                     0xFFFFFFFF,
                                     2)));
                 }
             });
-            return new Observation(
-                    basic.blocks(),
-                    basic.entities(),
-                    basic.self(),
-                    basic.history(),
-                    vecToEnemy
-            );
         }
 
-        @SuppressWarnings("unused") // Used by wrapped_fight_enemy_environment.py
+        @Override
+        public int getEncodedSize() {
+            return super.getEncodedSize() + (components().contains(ObservationComponent.ENEMY) ? ENEMY_BYTES : 0);
+        }
+
+        /**
+         * Writes the basic observation, then the yaw, pitch, and distance to the enemy (float32) if it's observed.
+         *
+         * @see BasicPlayerObservation#encode(ByteBuffer)
+         */
+        @Override
+        public void encode(ByteBuffer buffer) {
+            super.encode(buffer);
+            if (components().contains(ObservationComponent.ENEMY)) {
+                buffer.putFloat((float) vecToEnemy.getX());
+                buffer.putFloat((float) vecToEnemy.getY());
+                buffer.putFloat((float) vecToEnemy.getZ());
+            }
+        }
+
         public Vec3d getVecToEnemy() {
             return vecToEnemy;
         }
@@ -2,22 +2,74 @@
 package com.skycatdev.rlmc.environment;
 
 import carpet.helpers.EntityPlayerActionPack;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Set;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.Contract;
 
 @SuppressWarnings("unused") // Python uses it
 public class FutureActionPack {
+    /**
+     * Bytes in an encoded action. See {@link FutureActionPack#decode(ByteBuffer)}.
+     */
+    public static final int ENCODED_SIZE = (ActionType.values().length + 3) * Float.BYTES;
+    /**
+     * The layout {@link FutureActionPack#decode(ByteBuffer)} reads, as one "action" array.
+     */
+    public static final SpaceSchema SCHEMA = makeSchema();
     protected Set<ActionType> actions;
     protected float yaw;
     protected float pitch;
     protected int hotbar;
 
     public FutureActionPack() {
-        this.actions = new HashSet<>();
+        this.actions = EnumSet.noneOf(ActionType.class);
+    }
+
+    /**
+     * Decode an action into a new pack. See {@link FutureActionPack#decodeInto(ByteBuffer)} for the layout.
+     *
+     * @param buffer A little-endian buffer with at least {@link FutureActionPack#ENCODED_SIZE} bytes remaining.
+     * @return The decoded action.
+     */
+    public static FutureActionPack decode(ByteBuffer buffer) {
+        return new FutureActionPack().decodeInto(buffer);
+    }
+
+    /**
+     * Decode an action into this pack, replacing whatever it held. Every value is a float32, and they are, in order:<br>
+     * 1. One per {@link ActionType} in ordinal order. The action is active if it rounds to 1.<br>
+     * 2. Hotbar slot, from 0 to 1<br>
+     * 3. Yaw, from -1 to 1<br>
+     * 4. Pitch, from -1 to 1
+     *
+     * @param buffer A little-endian buffer with at least {@link FutureActionPack#ENCODED_SIZE} bytes remaining.
+     * @return This pack.
+     */
+    @Contract("_->this")
+    public FutureActionPack decodeInto(ByteBuffer buffer) {
+        actions.clear();
+        for (ActionType actionType : ActionType.values()) {
+            if (Math.rint(buffer.getFloat()) == 1) {
+                actions.add(actionType);
+            }
+        }
+        hotbar = (int) Math.rint(buffer.getFloat() * 8);
+        yaw = buffer.getFloat() * 180;
+        pitch = buffer.getFloat() * 90;
+        return this;
+    }
+
+    private static SpaceSchema makeSchema() {
+        int actionTypes = ActionType.values().length;
+        double[] low = new double[actionTypes + 3];
+        double[] high = new double[actionTypes + 3];
+        Arrays.fill(high, 1);
+        low[actionTypes + 1] = -1; // Yaw
+        low[actionTypes + 2] = -1; // Pitch
+        return SpaceSchema.builder().box("action", SpaceSchema.DType.FLOAT32, new int[]{actionTypes + 3}, low, high).build();
     }
 
     public void add(ActionType actionType) {
@@ -86,26 +138,112 @@ public class FutureActionPack {
 
     public static class History {
         /**
-         * Map of ActionType : Number of steps active in a row.
+         * The most steps in a row an action is counted for.
+         */
+        public static final int MAX_COUNT = 1200;
+        /**
+         * Floats per remembered action, in the layout of {@link FutureActionPack#decodeInto(ByteBuffer)}.
+         */
+        public static final int ACTION_FLOATS = ENCODED_SIZE / Float.BYTES;
+        /**
+         * Number of steps active in a row for each {@link ActionType}, by ordinal.
          * A negative number indicates it has been inactive for that many steps.
-         * It maxes out at 1200 steps.
+         * It maxes out at {@link History#MAX_COUNT} steps.
          */
-        public Map<ActionType, Integer> actionHistory;
+        private final int[] counters = new int[ActionType.values().length];
+        /**
+         * A ring of the last {@link History#rememberedActions} actions, {@link History#ACTION_FLOATS} each.
+         */
+        private final float[] recentActions;
+        private final int rememberedActions;
+        /**
+         * How many actions are in {@link History#recentActions}, up to {@link History#rememberedActions}.
+         */
+        private int recentActionCount;
+        /**
+         * Where the next action goes in {@link History#recentActions}.
+         */
+        private int nextAction;
+        /**
+         * {@link History#recentActions}, oldest first. Reused between calls to {@link History#getRecentActions()}.
+         */
+        private final float[] orderedRecentActions;
         public int yaw;
         public int pitch;
 
         public History() {
-            this.actionHistory = new HashMap<>();
+            this(0);
         }
 
-        public Map<ActionType, Integer> getActionHistory() {
-            return actionHistory;
+        /**
+         * @param rememberedActions How many of the most recent actions to keep, see {@link History#getRecentActions()}.
+         */
+        public History(int rememberedActions) {
+            this.rememberedActions = rememberedActions;
+            this.recentActions = new float[rememberedActions * ACTION_FLOATS];
+            this.orderedRecentActions = new float[rememberedActions * ACTION_FLOATS];
+        }
+
+        /**
+         * Forget every action, like a new history.
+         */
+        public void clear() {
+            Arrays.fill(counters, 0);
+            recentActionCount = 0;
+            nextAction = 0;
+            yaw = 0;
+            pitch = 0;
+        }
+
+        /**
+         * @return The number of steps the action has been active in a row, or negative for inactive.
+         */
+        public int getCount(ActionType actionType) {
+            return counters[actionType.ordinal()];
+        }
+
+        /**
+         * @return Every {@link History#getCount(ActionType)}, by ordinal. Not a copy.
+         */
+        public int[] getCounters() {
+            return counters;
         }
 
         public int getPitch() {
             return pitch;
         }
 
+        /**
+         * @return How many actions {@link History#getRecentActions()} holds at most.
+         */
+        public int getRememberedActions() {
+            return rememberedActions;
+        }
+
+        /**
+         * @return How many actions {@link History#getRecentActions()} holds.
+         */
+        public int getRecentActionCount() {
+            return recentActionCount;
+        }
+
+        /**
+         * @return The last {@link History#getRecentActionCount()} actions, oldest first, each {@link History#ACTION_FLOATS} floats
+         * in the layout of {@link FutureActionPack#decodeInto(ByteBuffer)}. Anything after them is zero.
+         * The array is reused, so it is only valid until the next call.
+         */
+        public float[] getRecentActions() {
+            if (recentActionCount < rememberedActions) {
+                System.arraycopy(recentActions, 0, orderedRecentActions, 0, recentActionCount * ACTION_FLOATS);
+                Arrays.fill(orderedRecentActions, recentActionCount * ACTION_FLOATS, orderedRecentActions.length, 0);
+            } else {
+                int oldest = nextAction * ACTION_FLOATS;
+                System.arraycopy(recentActions, oldest, orderedRecentActions, 0, recentActions.length - oldest);
+                System.arraycopy(recentActions, 0, orderedRecentActions, recentActions.length - oldest, oldest);
+            }
+            return orderedRecentActions;
+        }
+
         public int getYaw() {
             return yaw;
         }
@@ -113,16 +251,26 @@ public class FutureActionPack {
         @Contract("_->this")
         public History step(FutureActionPack futureActionPack) {
             for (ActionType actionType : ActionType.values()) {
+                int ordinal = actionType.ordinal();
                 if (futureActionPack.getActions().contains(actionType)) {
-                    actionHistory.computeIfPresent(actionType, (action, value) -> Math.min(value + 1, 1200));
-                    actionHistory.putIfAbsent(actionType, 1);
+                    counters[ordinal] = Math.min(counters[ordinal] + 1, MAX_COUNT);
                 } else {
-                    actionHistory.computeIfPresent(actionType, (action, value) -> Math.max(value - 1, -1200));
-                    actionHistory.putIfAbsent(actionType, -1);
+                    counters[ordinal] = Math.max(counters[ordinal] - 1, -MAX_COUNT);
                 }
             }
             yaw = (int) futureActionPack.getYaw();
             pitch = (int) futureActionPack.getPitch();
+            if (rememberedActions > 0) {
+                int offset = nextAction * ACTION_FLOATS;
+                for (ActionType actionType : ActionType.values()) {
+                    recentActions[offset++] = futureActionPack.getActions().contains(actionType) ? 1 : 0;
+                }
+                recentActions[offset++] = futureActionPack.getHotbar() / 8f;
+                recentActions[offset++] = futureActionPack.getYaw() / 180;
+                recentActions[offset] = futureActionPack.getPitch() / 90;
+                nextAction = (nextAction + 1) % rememberedActions;
+                recentActionCount = Math.min(recentActionCount + 1, rememberedActions);
+            }
             return this;
         }
     }
@@ -1,7 +1,6 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.environment;
 
-import com.skycatdev.rlmc.NameGenerator;
 import com.skycatdev.rlmc.Rlmc;
 import com.skycatdev.rlmc.command.EnvironmentSettings;
 import java.util.HashMap;
@@ -24,7 +23,13 @@ public class GoNorthEnvironment extends BasicPlayerEnvironment<BasicPlayerObserv
     private double prevX;
 
     public static @Nullable Future<GoNorthEnvironment> makeAndConnect(EnvironmentSettings settings, String agentName, MinecraftServer server) {
-        @Nullable CompletableFuture<ServerPlayerEntity> agentFuture = createPlayerAgent(agentName, server, Vec3d.ZERO, server.getOverworld().getRegistryKey());
+        return makeAndConnect(settings, createPlayerAgent(agentName, server, Vec3d.ZERO, server.getOverworld().getRegistryKey()));
+    }
+
+    /**
+     * @param agentFuture The agent to use, like one from {@link AgentPool#takeAgent(MinecraftServer)}.
+     */
+    public static @Nullable Future<GoNorthEnvironment> makeAndConnect(EnvironmentSettings settings, @Nullable CompletableFuture<ServerPlayerEntity> agentFuture) {
         if (agentFuture != null) {
             Function<ServerPlayerEntity, GoNorthEnvironment> environmentFuture = agent -> {
                 GoNorthEnvironment environment = new GoNorthEnvironment(settings, agent);
@@ -48,7 +53,7 @@ public class GoNorthEnvironment extends BasicPlayerEnvironment<BasicPlayerObserv
 
     @Override
     protected BasicPlayerObservation getObservation() {
-        return BasicPlayerObservation.fromPlayer(agent, xRaycasts, yRaycasts, 10, Math.PI/2, history);
+        return BasicPlayerObservation.fromPlayer(raycaster, getChunks(), agent, xRaycasts, yRaycasts, getRaycastDistance(), Math.PI/2, history, getOrigin(), getObservationComponents());
     }
 
     @Override
@@ -60,7 +65,8 @@ public class GoNorthEnvironment extends BasicPlayerEnvironment<BasicPlayerObserv
 
     @Override
     protected boolean isTerminated(BasicPlayerObservation observation) {
-        return agent.getX() > 20 || agent.getX() < -20;
+        double x = agent.getX() - getOrigin().getX();
+        return x > 20 || x < -20;
     }
 
     @Override
@@ -71,13 +77,13 @@ public class GoNorthEnvironment extends BasicPlayerEnvironment<BasicPlayerObserv
     @Override
     protected void innerPreReset(@Nullable Integer seed, @Nullable Map<String, Object> options) {
         Random random = Random.create();
-        Vec3d agentPos = getWorld().getTopPosition(Heightmap.Type.WORLD_SURFACE, BlockPos.ORIGIN).toCenterPos();
+        Vec3d agentPos = getWorld().getTopPosition(Heightmap.Type.WORLD_SURFACE, getOrigin()).toCenterPos();
         agent.teleport(getWorld(), agentPos.getX(), agentPos.getY(), agentPos.getZ(), Set.of(), (random.nextFloat() % 180) - 180,  (random.nextFloat() % 90) - 90);
     }
 
     @Override
     public Future<Future<? extends Environment<FutureActionPack, BasicPlayerObservation>>> makeAnother() {
-        FutureTask<Future<? extends Environment<FutureActionPack, BasicPlayerObservation>>> futureTask = new FutureTask<>(() -> Objects.requireNonNull(makeAndConnect(settings, NameGenerator.newName(getWorld().getServer().getPlayerManager().getPlayerList()), getWorld().getServer())));
+        FutureTask<Future<? extends Environment<FutureActionPack, BasicPlayerObservation>>> futureTask = new FutureTask<>(() -> Objects.requireNonNull(makeAndConnect(settings, AgentPool.takeAgent(server))));
         Rlmc.runBeforeNextTick(futureTask);
         return futureTask;
     }
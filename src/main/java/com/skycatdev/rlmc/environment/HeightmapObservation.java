@@ -0,0 +1,122 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.skycatdev.rlmc.RegistryIndex;
+import com.skycatdev.rlmc.Rlmc;
+import java.nio.ByteBuffer;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A top-down view of a square around a position, copied from the heightmaps the server already keeps.
+ * There are three layers, each {@code width * width}:<br>
+ * 1. The height of the top block ({@link Heightmap.Type#WORLD_SURFACE}), relative to the center<br>
+ * 2. The height of the top block that blocks motion, ignoring leaves ({@link Heightmap.Type#MOTION_BLOCKING_NO_LEAVES}), relative to the center<br>
+ * 3. The state id of the top block (see {@link RegistryIndex#getBlockStateId(BlockState)})<br>
+ * Columns in chunks that aren't loaded are at the bottom of the world, and air.
+ */
+public class HeightmapObservation {
+    public static final int LAYERS = 3;
+    private final int width;
+    /**
+     * The layers one after another, each in z, x order.
+     */
+    private final short[] values;
+
+    public HeightmapObservation(int width, short[] values) {
+        if (values.length != LAYERS * width * width) {
+            throw new IllegalArgumentException("Expected " + LAYERS * width * width + " values, got " + values.length);
+        }
+        this.width = width;
+        this.values = values;
+    }
+
+    /**
+     * @param chunks The chunks around the center, covering at least {@code width / 2} blocks on each side.
+     * @param width  How many blocks wide the square is. Odd widths are centered exactly.
+     * @param values Where to put the layers, or {@code null} to make a new array. Must hold {@code 3 * width * width} values.
+     */
+    public static HeightmapObservation sample(ChunkCache chunks, BlockPos center, int width, short @Nullable [] values) {
+        if (values == null) {
+            values = new short[LAYERS * width * width];
+        }
+        int area = width * width;
+        int minX = center.getX() - width / 2;
+        int minZ = center.getZ() - width / 2;
+        int bottom = chunks.getBottomY() - center.getY();
+        RegistryIndex ids = Rlmc.getRegistryIndex();
+        short air = (short) ids.getBlockStateId(Blocks.AIR.getDefaultState());
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        @Nullable WorldChunk chunk = null;
+        for (int z = 0; z < width; z++) {
+            for (int x = 0; x < width; x++) {
+                int blockX = minX + x;
+                int blockZ = minZ + z;
+                if (chunk == null || chunk.getPos().x != ChunkSectionPos.getSectionCoord(blockX) || chunk.getPos().z != ChunkSectionPos.getSectionCoord(blockZ)) {
+                    chunk = chunks.getChunk(ChunkSectionPos.getSectionCoord(blockX), ChunkSectionPos.getSectionCoord(blockZ));
+                }
+                int index = z * width + x;
+                if (chunk == null) {
+                    values[index] = (short) MathHelper.clamp(bottom, Short.MIN_VALUE, Short.MAX_VALUE);
+                    values[area + index] = values[index];
+                    values[2 * area + index] = air;
+                    continue;
+                }
+                int surface = chunk.sampleHeightmap(Heightmap.Type.WORLD_SURFACE, blockX & 15, blockZ & 15);
+                int motionBlocking = chunk.sampleHeightmap(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, blockX & 15, blockZ & 15);
+                values[index] = (short) MathHelper.clamp(surface - center.getY(), Short.MIN_VALUE, Short.MAX_VALUE);
+                values[area + index] = (short) MathHelper.clamp(motionBlocking - center.getY(), Short.MIN_VALUE, Short.MAX_VALUE);
+                values[2 * area + index] = (short) ids.getBlockStateId(chunk.getBlockState(pos.set(blockX, surface, blockZ)));
+            }
+        }
+        return new HeightmapObservation(width, values);
+    }
+
+    /**
+     * @return The number of bytes {@link HeightmapObservation#encode(ByteBuffer)} writes for a square of the width.
+     */
+    public static int getEncodedSize(int width) {
+        return LAYERS * width * width * Short.BYTES;
+    }
+
+    public int getEncodedSize() {
+        return getEncodedSize(width);
+    }
+
+    /**
+     * Describe the layout {@link HeightmapObservation#encode(ByteBuffer)} writes: the two height layers as "heightmap",
+     * then the state ids as "heightmap_states".
+     */
+    public static void describe(SpaceSchema.Builder builder, int width) {
+        builder.box("heightmap", SpaceSchema.DType.INT16, new int[]{LAYERS - 1, width, width}, Short.MIN_VALUE, Short.MAX_VALUE)
+                .box("heightmap_states", SpaceSchema.DType.UINT16, new int[]{width, width}, 0, Rlmc.getRegistryIndex().getBlockStateCount()); // The last one is modded
+    }
+
+    /**
+     * Write the layers into {@code buffer}, which should be little-endian, one after another, each in z, x order - x changes fastest.
+     * The heights are int16s, and the state ids are unsigned int16s.
+     *
+     * @param buffer The buffer to write to. Must have at least {@link HeightmapObservation#getEncodedSize()} bytes remaining.
+     */
+    public void encode(ByteBuffer buffer) {
+        buffer.asShortBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Short.BYTES);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @return The layers. Not a copy.
+     */
+    public short[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,52 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import net.minecraft.util.StringIdentifiable;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The parts of a {@link BasicPlayerObservation} that can be turned off. Parts that aren't observed aren't computed or encoded,
+ * and aren't in the Python observation space.
+ */
+public enum ObservationComponent implements StringIdentifiable {
+    /**
+     * The block rays.
+     */
+    BLOCKS("blocks"),
+    /**
+     * The entity rays.
+     */
+    ENTITIES("entities"),
+    /**
+     * The agent's position, rotation, hotbar slot and health.
+     */
+    SELF("self"),
+    /**
+     * The agent's {@link FutureActionPack.History}.
+     */
+    HISTORY("history"),
+    /**
+     * The vector to the enemy. Only observed by {@link FightEnemyEnvironment}.
+     */
+    ENEMY("enemy");
+
+    private final String name;
+
+    ObservationComponent(String name) {
+        this.name = name;
+    }
+
+    public static @Nullable ObservationComponent byName(String name) {
+        for (ObservationComponent component : values()) {
+            if (component.name.equals(name)) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String asString() {
+        return name;
+    }
+}
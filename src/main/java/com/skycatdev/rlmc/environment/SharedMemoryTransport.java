@@ -0,0 +1,220 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.skycatdev.rlmc.Rlmc;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A memory-mapped file shared with the Python trainer, used to step and reset environments without going through Py4J.
+ * The file is split into fixed-size slots, and each environment that opts in gets one. See shared_memory.py for the other side.<br>
+ * Slot layout (little-endian):<br>
+ * 0: request sequence number (int32, written by Python after everything else)<br>
+ * 4: command (int32, {@link SharedMemoryTransport#COMMAND_STEP} or {@link SharedMemoryTransport#COMMAND_RESET})<br>
+ * 8: whether a seed is present (int32)<br>
+ * 12: seed (int32)<br>
+ * 16: response sequence number (int32, written by Java after everything else)<br>
+ * 20: status (int32, {@link SharedMemoryTransport#STATUS_OK} or {@link SharedMemoryTransport#STATUS_ERROR})<br>
+ * 24: reward (float64)<br>
+ * 32: terminated (int8)<br>
+ * 33: truncated (int8)<br>
+ * 34: closed (int8, set by Java when the slot is released, so that Python stops waiting on it)<br>
+ * {@link SharedMemoryTransport#HEADER_BYTES}: encoded action, then the encoded observation (8-byte aligned)<br>
+ * Each environment has one request in flight at a time, so a slot holds a single request and response rather than a ring of them.
+ */
+public class SharedMemoryTransport {
+    public static final int COMMAND_STEP = 1;
+    public static final int COMMAND_RESET = 2;
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+    public static final int HEADER_BYTES = 40;
+    public static final int SLOT_BYTES = 1 << 18;
+    public static final int SLOTS = 256;
+    private static final int REQUEST = 0;
+    private static final int COMMAND = 4;
+    private static final int HAS_SEED = 8;
+    private static final int SEED = 12;
+    private static final int RESPONSE = 16;
+    private static final int STATUS = 20;
+    private static final int REWARD = 24;
+    private static final int TERMINATED = 32;
+    private static final int TRUNCATED = 33;
+    private static final int CLOSED = 34;
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static @Nullable SharedMemoryTransport instance;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    /**
+     * Which slots are in use. Synchronize on {@code this} first.
+     */
+    private final BitSet used = new BitSet(SLOTS);
+
+    private SharedMemoryTransport(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    public static synchronized SharedMemoryTransport get() {
+        if (instance == null) {
+            Path directory = Path.of("/dev/shm");
+            if (!Files.isDirectory(directory)) {
+                directory = Path.of(System.getProperty("java.io.tmpdir"));
+            }
+            Path path = directory.resolve(Rlmc.MOD_ID + "-" + ProcessHandle.current().pid());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SLOTS * SLOT_BYTES);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                instance = new SharedMemoryTransport(path, buffer);
+            } catch (IOException e) {
+                throw new EnvironmentException("Could not open shared memory at " + path, e);
+            }
+            path.toFile().deleteOnExit();
+            Rlmc.LOGGER.debug("Opened shared memory transport at {}", path);
+        }
+        return instance;
+    }
+
+    /**
+     * Reserve a slot.
+     *
+     * @param actionSize      The number of bytes in an encoded action.
+     * @param observationSize The number of bytes in an encoded observation.
+     * @return A new slot.
+     * @throws EnvironmentException If the sizes don't fit in a slot, or all slots are taken.
+     */
+    public synchronized Slot openSlot(int actionSize, int observationSize) {
+        int observationOffset = align(HEADER_BYTES + actionSize);
+        if (observationOffset + observationSize > SLOT_BYTES) {
+            throw new EnvironmentException("Action and observation (" + (actionSize + observationSize) + " bytes) are too big for a shared memory slot.");
+        }
+        int index = used.nextClearBit(0);
+        if (index >= SLOTS) {
+            throw new EnvironmentException("All " + SLOTS + " shared memory slots are in use.");
+        }
+        used.set(index);
+        int offset = index * SLOT_BYTES;
+        buffer.put(offset, new byte[HEADER_BYTES]);
+        return new Slot(offset, actionSize, observationOffset, observationSize);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    private synchronized void release(Slot slot) {
+        used.clear(slot.offset / SLOT_BYTES);
+    }
+
+    public class Slot {
+        private final int offset;
+        private final int actionSize;
+        private final int observationOffset;
+        private final int observationSize;
+        private boolean released = false;
+
+        private Slot(int offset, int actionSize, int observationOffset, int observationSize) {
+            this.offset = offset;
+            this.actionSize = actionSize;
+            this.observationOffset = observationOffset;
+            this.observationSize = observationSize;
+        }
+
+        /**
+         * Write the result of a request and publish it to Python.
+         *
+         * @param request     The request being answered.
+         * @param observation The encoded observation. Must be {@link Slot#getObservationSize()} bytes.
+         */
+        public void complete(int request, double reward, boolean terminated, boolean truncated, byte[] observation) {
+            buffer.putInt(offset + STATUS, STATUS_OK);
+            buffer.putDouble(offset + REWARD, reward);
+            buffer.put(offset + TERMINATED, (byte) (terminated ? 1 : 0));
+            buffer.put(offset + TRUNCATED, (byte) (truncated ? 1 : 0));
+            buffer.put(offset + observationOffset, observation, 0, observationSize);
+            INT_HANDLE.setRelease(buffer, offset + RESPONSE, request);
+        }
+
+        /**
+         * Tell Python that a request failed. The details are logged on this side.
+         *
+         * @param request The request that failed.
+         */
+        public void fail(int request) {
+            buffer.putInt(offset + STATUS, STATUS_ERROR);
+            INT_HANDLE.setRelease(buffer, offset + RESPONSE, request);
+        }
+
+        /**
+         * @return A little-endian view of the encoded action. Only valid until the request is answered.
+         */
+        public ByteBuffer getAction() {
+            return buffer.slice(offset + HEADER_BYTES, actionSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public int getActionOffset() {
+            return offset + HEADER_BYTES;
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public int getActionSize() {
+            return actionSize;
+        }
+
+        public int getCommand() {
+            return buffer.getInt(offset + COMMAND);
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public int getObservationOffset() {
+            return offset + observationOffset;
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public int getObservationSize() {
+            return observationSize;
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public int getOffset() {
+            return offset;
+        }
+
+        @SuppressWarnings("unused") // Used by shared_memory.py
+        public String getPath() {
+            return path.toString();
+        }
+
+        /**
+         * @return The latest request sequence number. Reads after this see everything Python wrote before publishing it.
+         */
+        public int getRequest() {
+            return (int) INT_HANDLE.getAcquire(buffer, offset + REQUEST);
+        }
+
+        public @Nullable Integer getSeed() {
+            return buffer.getInt(offset + HAS_SEED) != 0 ? buffer.getInt(offset + SEED) : null;
+        }
+
+        /**
+         * Give the slot back. Python is told the slot is closed, so anything waiting on it fails instead of hanging.
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                buffer.put(offset + CLOSED, (byte) 1);
+                SharedMemoryTransport.this.release(this);
+            }
+        }
+    }
+}
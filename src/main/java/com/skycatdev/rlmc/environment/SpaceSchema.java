@@ -0,0 +1,230 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Describes how an encoded observation or action is laid out, so that Python can build the matching Gymnasium space and
+ * decode it without knowing the environment. See space_schema.py.<br>
+ * Each field is an array read straight out of the encoded bytes, with its own offset and strides, so records of mixed types
+ * can be described without copying them apart.
+ */
+public final class SpaceSchema {
+    private final List<Field> fields;
+    private final int size;
+
+    private SpaceSchema(List<Field> fields, int size) {
+        this.fields = fields;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder(0);
+    }
+
+    public List<Field> fields() {
+        return fields;
+    }
+
+    /**
+     * @return The number of bytes the schema describes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param frames How many copies of this layout follow each other, like stacked frames.
+     * @return A schema where each field has an extra leading axis of {@code frames}, or this schema if there's only one frame.
+     */
+    public SpaceSchema stacked(int frames) {
+        if (frames <= 1) {
+            return this;
+        }
+        List<Field> stackedFields = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            stackedFields.add(field.repeated(frames, size));
+        }
+        return new SpaceSchema(List.copyOf(stackedFields), size * frames);
+    }
+
+    /**
+     * @return The schema as JSON, so that Python can fetch it in one call. See space_schema.py for the format.
+     */
+    @SuppressWarnings("unused") // Used by space_schema.py
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("size", size);
+        JsonArray fieldsJson = new JsonArray(fields.size());
+        for (Field field : fields) {
+            fieldsJson.add(field.toJson());
+        }
+        json.add("fields", fieldsJson);
+        return json.toString();
+    }
+
+    public enum DType {
+        INT16("<i2", Short.BYTES),
+        UINT16("<u2", Short.BYTES),
+        INT32("<i4", Integer.BYTES),
+        FLOAT32("<f4", Float.BYTES);
+
+        /**
+         * The little-endian numpy type string.
+         */
+        private final String numpy;
+        private final int bytes;
+
+        DType(String numpy, int bytes) {
+            this.numpy = numpy;
+            this.bytes = bytes;
+        }
+
+        public int bytes() {
+            return bytes;
+        }
+
+        public String numpy() {
+            return numpy;
+        }
+    }
+
+    /**
+     * One array in the encoded bytes.
+     *
+     * @param offset   Where the first value is, in bytes.
+     * @param strides  How many bytes apart neighbors on each axis are.
+     * @param low      The lowest value. Either one value for every element, or one per index of the last axis.
+     * @param high     The highest value, like {@code low}.
+     * @param discrete Whether the values are categories from {@code 0} to {@code high}, instead of a range.
+     */
+    public record Field(String name, DType dtype, int[] shape, int offset, int[] strides, double[] low, double[] high, boolean discrete) {
+        private Field repeated(int count, int stride) {
+            int[] repeatedShape = new int[shape.length + 1];
+            int[] repeatedStrides = new int[strides.length + 1];
+            repeatedShape[0] = count;
+            repeatedStrides[0] = stride;
+            System.arraycopy(shape, 0, repeatedShape, 1, shape.length);
+            System.arraycopy(strides, 0, repeatedStrides, 1, strides.length);
+            return new Field(name, dtype, repeatedShape, offset, repeatedStrides, low, high, discrete);
+        }
+
+        private JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", name);
+            json.addProperty("dtype", dtype.numpy());
+            json.add("shape", toJsonArray(shape));
+            json.addProperty("offset", offset);
+            json.add("strides", toJsonArray(strides));
+            JsonArray lowJson = new JsonArray(low.length);
+            Arrays.stream(low).forEach(lowJson::add);
+            json.add("low", lowJson);
+            JsonArray highJson = new JsonArray(high.length);
+            Arrays.stream(high).forEach(highJson::add);
+            json.add("high", highJson);
+            json.addProperty("discrete", discrete);
+            return json;
+        }
+
+        private static JsonArray toJsonArray(int[] values) {
+            JsonArray array = new JsonArray(values.length);
+            Arrays.stream(values).forEach(array::add);
+            return array;
+        }
+    }
+
+    /**
+     * Adds fields one after another, in the order they're encoded.
+     */
+    public static final class Builder {
+        private final List<Field> fields = new ArrayList<>();
+        private final int start;
+        private int offset;
+
+        private Builder(int start) {
+            this.start = start;
+            this.offset = start;
+        }
+
+        /**
+         * Add a range of values, like a Gymnasium {@code Box}, where every element shares the bounds.
+         */
+        @Contract("_,_,_,_,_->this")
+        public Builder box(String name, DType dtype, int[] shape, double low, double high) {
+            return box(name, dtype, shape, new double[]{low}, new double[]{high});
+        }
+
+        /**
+         * Add a range of values, like a Gymnasium {@code Box}.
+         *
+         * @param low  Either one bound for every element, or one per index of the last axis.
+         * @param high Like {@code low}.
+         */
+        @Contract("_,_,_,_,_->this")
+        public Builder box(String name, DType dtype, int[] shape, double[] low, double[] high) {
+            return add(name, dtype, shape, low, high, false);
+        }
+
+        /**
+         * Add categories from {@code 0} to {@code n - 1}, like a Gymnasium {@code Discrete} if there's no shape, or
+         * {@code MultiDiscrete} otherwise.
+         */
+        @Contract("_,_,_,_->this")
+        public Builder discrete(String name, DType dtype, int[] shape, int n) {
+            return add(name, dtype, shape, new double[]{0}, new double[]{n - 1}, true);
+        }
+
+        /**
+         * Add {@code count} records encoded one after another. Each field of the record becomes an array with a leading
+         * axis of {@code count}, so the records don't need to be split up to be read.
+         *
+         * @param record Adds the fields of one record, in order.
+         */
+        @Contract("_,_->this")
+        public Builder records(int count, Consumer<Builder> record) {
+            Builder recordBuilder = new Builder(offset);
+            record.accept(recordBuilder);
+            int recordSize = recordBuilder.offset - offset;
+            for (Field field : recordBuilder.fields) {
+                fields.add(field.repeated(count, recordSize));
+            }
+            offset += recordSize * count;
+            return this;
+        }
+
+        private Builder add(String name, DType dtype, int[] shape, double[] low, double[] high, boolean discrete) {
+            if (low.length != 1 && (shape.length == 0 || low.length != shape[shape.length - 1])) {
+                throw new IllegalArgumentException("Bounds of " + name + " must have one value or one per index of the last axis");
+            }
+            if (low.length != high.length) {
+                throw new IllegalArgumentException("Bounds of " + name + " must be the same length");
+            }
+            int[] strides = new int[shape.length];
+            int stride = dtype.bytes();
+            for (int i = shape.length - 1; i >= 0; i--) {
+                strides[i] = stride;
+                stride *= shape[i];
+            }
+            fields.add(new Field(name, dtype, shape.clone(), offset, strides, low.clone(), high.clone(), discrete));
+            offset += stride;
+            return this;
+        }
+
+        /**
+         * @return The number of bytes described so far.
+         */
+        public int size() {
+            return offset - start;
+        }
+
+        public SpaceSchema build() {
+            return new SpaceSchema(List.copyOf(fields), size());
+        }
+    }
+}
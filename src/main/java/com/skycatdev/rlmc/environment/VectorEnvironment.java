@@ -0,0 +1,169 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Steps and resets several environments at once. Every request is queued before waiting on any of them,
+ * so all the environments are handled in the same tick instead of one tick after another. Environments whose episode
+ * ends are reset in the same tick as their last step. See java_vec_env.py.
+ *
+ * @param <A> Action type
+ * @param <O> Observation type
+ */
+public class VectorEnvironment<A, O> {
+    protected final List<Environment<A, O>> environments = new ArrayList<>();
+    /**
+     * Steps taken in each environment's current episode, for {@link VectorEnvironment#timeLimit}.
+     */
+    protected int[] episodeSteps = new int[0];
+    /**
+     * Truncate episodes after this many steps, or 0 for no limit.
+     */
+    protected int timeLimit = 0;
+
+    @SuppressWarnings("unused") // Used by entrypoint.py
+    public VectorEnvironment() {
+    }
+
+    /**
+     * Add an environment. It must encode actions and observations the same way as the ones already added.
+     */
+    @SuppressWarnings("unused") // Used by entrypoint.py
+    public void add(Environment<A, O> environment) {
+        if (!environments.isEmpty()) {
+            Environment<A, O> first = environments.getFirst();
+            if (first.getEncodedActionSize() != environment.getEncodedActionSize() || first.getEncodedObservationSize() != environment.getEncodedObservationSize()) {
+                throw new EnvironmentException("Environment \"" + environment.getUniqueEnvName() + "\" is not compatible with \"" + first.getUniqueEnvName() + "\".");
+            }
+        }
+        environments.add(environment);
+        episodeSteps = Arrays.copyOf(episodeSteps, environments.size());
+    }
+
+    @SuppressWarnings("unused") // Used by java_vec_env.py
+    public void close() {
+        environments.forEach(Environment::close);
+    }
+
+    /**
+     * @return The number of bytes in one environment's encoded observation.
+     */
+    public int getEncodedObservationSize() {
+        return environments.getFirst().getEncodedObservationSize();
+    }
+
+    /**
+     * Reset every environment. Blocking.
+     *
+     * @return The encoded observations, one after another in environment order.
+     */
+    @SuppressWarnings("unused") // Used by java_vec_env.py
+    public byte[] resetAll() {
+        byte[] mask = new byte[environments.size()];
+        Arrays.fill(mask, (byte) 1);
+        return resetAll(mask);
+    }
+
+    /**
+     * Reset some environments. Blocking.
+     *
+     * @param mask One byte per environment. Environments with a non-zero byte are reset.
+     * @return The encoded observations of every environment, one after another in environment order. Environments that
+     * were not reset report their last observation.
+     */
+    public byte[] resetAll(byte[] mask) {
+        List<@Nullable Future<ResetTuple<O>>> resets = new ArrayList<>(environments.size());
+        for (int i = 0; i < environments.size(); i++) {
+            if (mask[i] != 0) {
+                resets.add(environments.get(i).requestReset(null, null));
+                episodeSteps[i] = 0;
+            } else {
+                resets.add(null);
+            }
+        }
+        try {
+            for (@Nullable Future<ResetTuple<O>> reset : resets) {
+                if (reset != null) {
+                    reset.get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new EnvironmentException("There was a problem waiting for a vectorized reset.", e);
+        }
+        return collectObservations();
+    }
+
+    /**
+     * @param timeLimit Truncate episodes after this many steps, or 0 for no limit.
+     */
+    @SuppressWarnings("unused") // Used by java_vec_env.py
+    public void setTimeLimit(int timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public int size() {
+        return environments.size();
+    }
+
+    /**
+     * Step every environment, resetting the ones whose episode ends. Blocking.
+     *
+     * @param actions The encoded actions, one after another in environment order.
+     * @return The results of every step. The observations of reset environments are the first of their new episode.
+     * @see Environment#decodeAction(ByteBuffer)
+     */
+    @SuppressWarnings("unused") // Used by java_vec_env.py
+    public VectorStepTuple stepAll(byte[] actions) {
+        List<Future<AutoResetStepTuple<O>>> steps = new ArrayList<>(environments.size());
+        int position = 0;
+        for (int i = 0; i < environments.size(); i++) {
+            Environment<A, O> environment = environments.get(i);
+            int actionSize = environment.getEncodedActionSize();
+            episodeSteps[i]++;
+            boolean truncate = timeLimit > 0 && episodeSteps[i] >= timeLimit;
+            // Decoded on the server thread, see Environment#requestStep(byte[])
+            steps.add(environment.requestAutoResetStep(Arrays.copyOfRange(actions, position, position + actionSize), truncate));
+            position += actionSize;
+        }
+        double[] rewards = new double[environments.size()];
+        boolean[] terminated = new boolean[environments.size()];
+        boolean[] truncated = new boolean[environments.size()];
+        List<byte[]> terminalObservations = new ArrayList<>();
+        try {
+            for (int i = 0; i < steps.size(); i++) {
+                AutoResetStepTuple<O> result = steps.get(i).get();
+                StepTuple<O> step = result.step();
+                rewards[i] = step.reward();
+                terminated[i] = step.terminated();
+                truncated[i] = step.truncated();
+                if (result.terminalObservation() != null) {
+                    terminalObservations.add(result.terminalObservation());
+                    episodeSteps[i] = 0;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new EnvironmentException("There was a problem waiting for a vectorized step.", e);
+        }
+        byte[] packedTerminalObservations = new byte[terminalObservations.size() * getEncodedObservationSize()];
+        for (int i = 0; i < terminalObservations.size(); i++) {
+            System.arraycopy(terminalObservations.get(i), 0, packedTerminalObservations, i * getEncodedObservationSize(), getEncodedObservationSize());
+        }
+        return new VectorStepTuple(collectObservations(), packedTerminalObservations, rewards, terminated, truncated);
+    }
+
+    private byte[] collectObservations() {
+        int observationSize = getEncodedObservationSize();
+        byte[] observations = new byte[observationSize * environments.size()];
+        for (int i = 0; i < environments.size(); i++) {
+            System.arraycopy(environments.get(i).getEncodedObservation(), 0, observations, i * observationSize, observationSize);
+        }
+        return observations;
+    }
+}
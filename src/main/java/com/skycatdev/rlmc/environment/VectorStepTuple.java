@@ -0,0 +1,37 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The result of stepping every environment in a {@link VectorEnvironment}.
+ *
+ * @param observations         The encoded observations, one after another in environment order. Environments that were reset
+ *                             report the first observation of their new episode.
+ * @param terminalObservations The encoded observations the finished episodes ended with, one after another in environment
+ *                             order. Only environments that were terminated or truncated have one.
+ */
+public record VectorStepTuple(byte[] observations, byte[] terminalObservations, double[] rewards, boolean[] terminated, boolean[] truncated) {
+    /**
+     * Pack everything into one little-endian array, so it can be sent in one call. The layout is the rewards (float64),
+     * then terminated (int8), then truncated (int8), then {@link VectorStepTuple#observations()}, then {@link VectorStepTuple#terminalObservations()}.
+     */
+    @SuppressWarnings("unused") // Used by java_vec_env.py
+    public byte[] encode() {
+        int size = rewards.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size * (Double.BYTES + 2) + observations.length + terminalObservations.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (double reward : rewards) {
+            buffer.putDouble(reward);
+        }
+        for (boolean term : terminated) {
+            buffer.put((byte) (term ? 1 : 0));
+        }
+        for (boolean trunc : truncated) {
+            buffer.put((byte) (trunc ? 1 : 0));
+        }
+        buffer.put(observations);
+        buffer.put(terminalObservations);
+        return buffer.array();
+    }
+}
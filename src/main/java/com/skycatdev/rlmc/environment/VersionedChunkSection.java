@@ -0,0 +1,12 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+/**
+ * Counts changes to a chunk section's blocks, so that observations of it can be reused until it changes.
+ */
+public interface VersionedChunkSection {
+    /**
+     * @return A number that changes every time a block in the section is changed.
+     */
+    int rlmc$getBlockVersion();
+}
@@ -0,0 +1,164 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.environment;
+
+import com.skycatdev.rlmc.RegistryIndex;
+import com.skycatdev.rlmc.Rlmc;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A box of block states centered on a position, read straight from the chunk sections instead of raycast.
+ * States are stored as their ids from {@link RegistryIndex#getBlockStateId(BlockState)}, as unsigned shorts.
+ * Blocks outside the world or in chunks that aren't loaded are air.
+ */
+public class VoxelGridObservation {
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    /**
+     * The state ids, indexed by {@link VoxelGridObservation#index(int, int, int)}.
+     */
+    private final short[] states;
+    /**
+     * The lowest corner of the box.
+     */
+    private final BlockPos min;
+
+    public VoxelGridObservation(int sizeX, int sizeY, int sizeZ, short[] states, BlockPos min) {
+        if (states.length != sizeX * sizeY * sizeZ) {
+            throw new IllegalArgumentException("Expected " + sizeX * sizeY * sizeZ + " states, got " + states.length);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.states = states;
+        this.min = min;
+    }
+
+    /**
+     * @param chunks The chunks around the center, covering at least half of the box's size on each side.
+     * @param sizeX  How many blocks wide the box is on the x-axis. Odd sizes are centered exactly.
+     * @param states Where to put the state ids, or {@code null} to make a new array. Must hold {@code sizeX * sizeY * sizeZ} ids.
+     */
+    public static VoxelGridObservation sample(ChunkCache chunks, BlockPos center, int sizeX, int sizeY, int sizeZ, short @Nullable [] states) {
+        if (states == null) {
+            states = new short[sizeX * sizeY * sizeZ];
+        }
+        BlockPos min = center.add(-sizeX / 2, -sizeY / 2, -sizeZ / 2);
+        RegistryIndex ids = Rlmc.getRegistryIndex();
+        short air = (short) ids.getBlockStateId(Blocks.AIR.getDefaultState());
+        Arrays.fill(states, air);
+        int maxX = min.getX() + sizeX - 1;
+        int maxY = Math.min(min.getY() + sizeY - 1, chunks.getTopY() - 1);
+        int maxZ = min.getZ() + sizeZ - 1;
+        int minY = Math.max(min.getY(), chunks.getBottomY());
+        // Neighboring blocks are usually the same, so remember the last lookup
+        @Nullable BlockState lastState = null;
+        short lastId = air;
+        for (int chunkX = ChunkSectionPos.getSectionCoord(min.getX()); chunkX <= ChunkSectionPos.getSectionCoord(maxX); chunkX++) {
+            for (int chunkZ = ChunkSectionPos.getSectionCoord(min.getZ()); chunkZ <= ChunkSectionPos.getSectionCoord(maxZ); chunkZ++) {
+                @Nullable WorldChunk chunk = chunks.getChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                int startX = Math.max(min.getX(), ChunkSectionPos.getBlockCoord(chunkX));
+                int endX = Math.min(maxX, ChunkSectionPos.getBlockCoord(chunkX) + 15);
+                int startZ = Math.max(min.getZ(), ChunkSectionPos.getBlockCoord(chunkZ));
+                int endZ = Math.min(maxZ, ChunkSectionPos.getBlockCoord(chunkZ) + 15);
+                for (int sectionY = ChunkSectionPos.getSectionCoord(minY); sectionY <= ChunkSectionPos.getSectionCoord(maxY); sectionY++) {
+                    ChunkSection section = chunk.getSection(chunks.sectionCoordToIndex(sectionY));
+                    if (section.isEmpty()) {
+                        continue;
+                    }
+                    PalettedContainer<BlockState> container = section.getBlockStateContainer();
+                    int startY = Math.max(minY, ChunkSectionPos.getBlockCoord(sectionY));
+                    int endY = Math.min(maxY, ChunkSectionPos.getBlockCoord(sectionY) + 15);
+                    for (int y = startY; y <= endY; y++) {
+                        for (int z = startZ; z <= endZ; z++) {
+                            for (int x = startX; x <= endX; x++) {
+                                BlockState state = container.get(x & 15, y & 15, z & 15);
+                                if (state != lastState) {
+                                    lastState = state;
+                                    lastId = (short) ids.getBlockStateId(state);
+                                }
+                                states[((y - min.getY()) * sizeZ + (z - min.getZ())) * sizeX + (x - min.getX())] = lastId;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new VoxelGridObservation(sizeX, sizeY, sizeZ, states, min);
+    }
+
+    /**
+     * @return The number of bytes {@link VoxelGridObservation#encode(ByteBuffer)} writes for a box of the size.
+     */
+    public static int getEncodedSize(int sizeX, int sizeY, int sizeZ) {
+        return sizeX * sizeY * sizeZ * Short.BYTES;
+    }
+
+    public int getEncodedSize() {
+        return getEncodedSize(sizeX, sizeY, sizeZ);
+    }
+
+    /**
+     * Describe the layout {@link VoxelGridObservation#encode(ByteBuffer)} writes, as "voxels" shaped (y, z, x).
+     */
+    public static void describe(SpaceSchema.Builder builder, int sizeX, int sizeY, int sizeZ) {
+        builder.box("voxels", SpaceSchema.DType.UINT16, new int[]{sizeY, sizeZ, sizeX}, 0, Rlmc.getRegistryIndex().getBlockStateCount()); // The last one is modded
+    }
+
+    /**
+     * Write the state ids into {@code buffer}, which should be little-endian, as unsigned int16s.
+     * They're in y, z, x order - x changes fastest, like in a chunk section.
+     *
+     * @param buffer The buffer to write to. Must have at least {@link VoxelGridObservation#getEncodedSize()} bytes remaining.
+     */
+    public void encode(ByteBuffer buffer) {
+        buffer.asShortBuffer().put(states);
+        buffer.position(buffer.position() + states.length * Short.BYTES);
+    }
+
+    /**
+     * @return The state id at the position relative to {@link VoxelGridObservation#min()}.
+     */
+    public int get(int x, int y, int z) {
+        return Short.toUnsignedInt(states[index(x, y, z)]);
+    }
+
+    public int index(int x, int y, int z) {
+        return (y * sizeZ + z) * sizeX + x;
+    }
+
+    public BlockPos min() {
+        return min;
+    }
+
+    public int sizeX() {
+        return sizeX;
+    }
+
+    public int sizeY() {
+        return sizeY;
+    }
+
+    public int sizeZ() {
+        return sizeZ;
+    }
+
+    /**
+     * @return The state ids. Not a copy.
+     */
+    public short[] states() {
+        return states;
+    }
+}
@@ -3,11 +3,21 @@ package com.skycatdev.rlmc.environment;
 
 import com.skycatdev.rlmc.Rlmc;
 import com.skycatdev.rlmc.command.EnvironmentSettings;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.Difficulty;
 import net.minecraft.world.GameRules;
+import net.minecraft.world.World;
 import net.minecraft.world.dimension.DimensionTypes;
 import net.minecraft.world.gen.chunk.ChunkGenerator;
 import org.checkerframework.checker.units.qual.A;
@@ -17,7 +27,31 @@ import xyz.nucleoid.fantasy.RuntimeWorldConfig;
 import xyz.nucleoid.fantasy.RuntimeWorldHandle;
 
 public abstract class WorldEnvironment<A, O> extends Environment<A, O> {
+    /**
+     * How many chunks around the origin of a new world start generating as soon as it's opened.
+     */
+    public static final int PREFETCH_RADIUS = 5;
+    /**
+     * Loads the area around the origin of a new world, so that it generates in the background before anything needs it.
+     */
+    public static final ChunkTicketType<ChunkPos> PREFETCH_TICKET = ChunkTicketType.create(Rlmc.MOD_ID + "_prefetch", Comparator.comparingLong(ChunkPos::toLong));
+    /**
+     * Worlds that are still generating and haven't been taken by anything. They only load chunks instead of ticking.
+     */
+    private static final Set<RegistryKey<World>> PREFETCHING = Collections.newSetFromMap(new ConcurrentHashMap<>());
     @Nullable protected RuntimeWorldHandle worldHandle;
+    /**
+     * The world to use next, already generating. Only used when {@link EnvironmentSettings#shouldPrefetchWorlds()}.
+     */
+    @Nullable protected RuntimeWorldHandle nextWorldHandle;
+    /**
+     * This environment's cell of a shared world. Only used when {@link EnvironmentSettings#shouldShareWorld()}, instead of {@link WorldEnvironment#worldHandle}.
+     */
+    @Nullable protected ArenaAllocator.Arena arena;
+    /**
+     * Picks the seeds of new worlds.
+     */
+    protected final Random seeds = new Random();
     protected MinecraftServer server;
 
     public WorldEnvironment(EnvironmentSettings environmentSettings, MinecraftServer server) {
@@ -25,20 +59,124 @@ public abstract class WorldEnvironment<A, O> extends Environment<A, O> {
         this.server = server;
     }
 
+    @Override
+    public void close() {
+        super.close();
+        if (nextWorldHandle != null) {
+            stopPrefetching(nextWorldHandle);
+            nextWorldHandle.delete();
+            nextWorldHandle = null;
+        }
+        if (arena != null) {
+            ArenaAllocator.release(arena);
+            arena = null;
+        }
+    }
+
     protected abstract ChunkGenerator getChunkGenerator();
 
+    /**
+     * @return The point to treat as the origin of the world. Only meaningful after {@link WorldEnvironment#getWorld()}.
+     */
+    public BlockPos getOrigin() {
+        return arena == null ? BlockPos.ORIGIN : arena.origin();
+    }
+
+    /**
+     * @return The part of the world this environment has to stay in, or {@code null} if it has the whole world.
+     * Only meaningful after {@link WorldEnvironment#getWorld()}.
+     */
+    public @Nullable BlockBox getBounds() {
+        return arena == null ? null : arena.bounds();
+    }
+
+    /**
+     * Open a temporary world like the ones environments use, with a random seed.
+     */
+    public static RuntimeWorldHandle openWorld(MinecraftServer server, ChunkGenerator generator) {
+        return openWorld(server, generator, new Random().nextLong());
+    }
+
+    /**
+     * Open a temporary world like the ones environments use. The chunks around the origin start generating in the background right away,
+     * and the world doesn't tick until {@link WorldEnvironment#stopPrefetching(RuntimeWorldHandle)}.
+     */
+    public static RuntimeWorldHandle openWorld(MinecraftServer server, ChunkGenerator generator, long seed) {
+        RuntimeWorldHandle worldHandle = Fantasy.get(server).openTemporaryWorld(new RuntimeWorldConfig()
+                .setDimensionType(DimensionTypes.OVERWORLD)
+                .setDifficulty(Difficulty.HARD)
+                .setGameRule(GameRules.DO_DAYLIGHT_CYCLE, false)
+                .setGenerator(generator)
+                .setSeed(seed));
+        ServerWorld world = worldHandle.asWorld();
+        world.setTimeOfDay(24000L);
+        ChunkPos origin = new ChunkPos(BlockPos.ORIGIN);
+        world.getChunkManager().addTicket(PREFETCH_TICKET, origin, PREFETCH_RADIUS, origin);
+        PREFETCHING.add(worldHandle.getRegistryKey());
+        return worldHandle;
+    }
+
+    /**
+     * @return Whether the world is from {@link WorldEnvironment#openWorld(MinecraftServer, ChunkGenerator, long)} and hasn't been taken yet,
+     * so it should only load chunks instead of ticking.
+     */
+    public static boolean isPrefetching(RegistryKey<World> world) {
+        return PREFETCHING.contains(world);
+    }
+
+    /**
+     * Let a world from {@link WorldEnvironment#openWorld(MinecraftServer, ChunkGenerator, long)} tick normally and stop keeping its origin loaded.
+     * Call on the server thread when taking the world, or before deleting one that was never taken.
+     */
+    public static void stopPrefetching(RuntimeWorldHandle worldHandle) {
+        if (PREFETCHING.remove(worldHandle.getRegistryKey())) {
+            ChunkPos origin = new ChunkPos(BlockPos.ORIGIN);
+            worldHandle.asWorld().getChunkManager().removeTicket(PREFETCH_TICKET, origin, PREFETCH_RADIUS, origin);
+        }
+    }
+
+    /**
+     * Start generating the next world, if there isn't one already. Call on the server thread, outside of world ticking.
+     */
+    protected void prefetchNextWorld() {
+        if (nextWorldHandle == null && !isClosed()) {
+            nextWorldHandle = openWorld(server, getChunkGenerator(), seeds.nextLong());
+            Rlmc.LOGGER.trace("Prefetching next world for env \"{}\"", getUniqueEnvName());
+        }
+    }
+
     @SuppressWarnings("unused") // Used by wrapped_basic_player_environment.py
     protected ServerWorld getWorld() {
+        if (arena != null) {
+            return arena.world();
+        }
+        if (settings.shouldShareWorld() && worldHandle == null) {
+            if (getChunkGenerator() instanceof ArenaChunkGenerator generator) {
+                arena = ArenaAllocator.allocate(server, generator);
+                Rlmc.setEnvironmentWorld(this, arena.world().getRegistryKey());
+                return arena.world();
+            }
+            Rlmc.LOGGER.warn("Environment \"{}\" can only share a world with an arena layout, giving it its own world instead.", getUniqueEnvName());
+        }
         if (worldHandle == null) {
-            Rlmc.LOGGER.trace("Creating world for basic player env \"{}\"", getUniqueEnvName());
-            worldHandle = Fantasy.get(server).openTemporaryWorld(new RuntimeWorldConfig()
-                    .setDimensionType(DimensionTypes.OVERWORLD)
-                    .setDifficulty(Difficulty.HARD)
-                    .setGameRule(GameRules.DO_DAYLIGHT_CYCLE, false)
-                    .setGenerator(getChunkGenerator())
-                    .setSeed(new Random().nextLong()));
-            worldHandle.asWorld().setTimeOfDay(24000L);
-            Rlmc.LOGGER.trace("Created world for basic player env \"{}\"", getUniqueEnvName());
+            ChunkGenerator generator = getChunkGenerator();
+            if (nextWorldHandle != null) {
+                worldHandle = nextWorldHandle;
+                nextWorldHandle = null;
+                Rlmc.LOGGER.trace("Took the prefetched world for basic player env \"{}\"", getUniqueEnvName());
+            } else {
+                worldHandle = AgentPool.takeWorld(generator);
+            }
+            if (worldHandle == null) {
+                Rlmc.LOGGER.trace("Creating world for basic player env \"{}\"", getUniqueEnvName());
+                worldHandle = openWorld(server, generator, seeds.nextLong());
+                Rlmc.LOGGER.trace("Created world for basic player env \"{}\"", getUniqueEnvName());
+            }
+            stopPrefetching(worldHandle);
+            Rlmc.setEnvironmentWorld(this, worldHandle.getRegistryKey());
+            if (settings.shouldPrefetchWorlds()) {
+                Rlmc.runBeforeNextTick(this::prefetchNextWorld); // Not right now, since this is usually called while worlds are ticking
+            }
         }
         return worldHandle.asWorld();
     }
@@ -0,0 +1,29 @@
+/* Licensed MIT 2025 */
+package com.skycatdev.rlmc.mixin;
+
+import com.skycatdev.rlmc.environment.VersionedChunkSection;
+import net.minecraft.block.BlockState;
+import net.minecraft.world.chunk.ChunkSection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSection.class)
+public abstract class ChunkSectionMixin implements VersionedChunkSection {
+    @Unique protected volatile int rlmc$blockVersion = 0;
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("RETURN"))
+    private void rlmc$countBlockChange(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        if (cir.getReturnValue() != state) {
+            //noinspection NonAtomicOperationOnVolatileField Only changed by the thread ticking the world
+            rlmc$blockVersion++;
+        }
+    }
+
+    @Override
+    public int rlmc$getBlockVersion() {
+        return rlmc$blockVersion;
+    }
+}
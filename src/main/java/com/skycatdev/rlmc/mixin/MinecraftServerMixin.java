@@ -1,25 +1,61 @@
 /* Licensed MIT 2025 */
 package com.skycatdev.rlmc.mixin;
 
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
 import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
 import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import com.skycatdev.rlmc.ParallelPostTick;
 import com.skycatdev.rlmc.Rlmc;
+import com.skycatdev.rlmc.TurboMode;
+import com.skycatdev.rlmc.environment.AgentPool;
+import com.skycatdev.rlmc.environment.ArenaAllocator;
+import com.skycatdev.rlmc.environment.EntityGrid;
 import com.skycatdev.rlmc.environment.Environment;
+import com.skycatdev.rlmc.environment.WorldEnvironment;
 import java.util.List;
 import java.util.function.BooleanSupplier;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.ServerTickManager;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Util;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(MinecraftServer.class)
 public abstract class MinecraftServerMixin {
+    @Shadow private long tickStartTimeNanos;
+    @Shadow private boolean waitingForNextTick;
+
+    /**
+     * In turbo mode, start the next tick from now instead of on the normal schedule, so there is no catching up when it's turned off.
+     */
+    @WrapOperation(method = "runServer", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/ServerTickManager;getNanosPerTick()J"))
+    protected long rlmc$turboNanosPerTick(ServerTickManager instance, Operation<Long> original) {
+        if (TurboMode.isReady()) {
+            tickStartTimeNanos = Math.max(tickStartTimeNanos, Util.getMeasuringTimeNano());
+            return TurboMode.getNanosPerTick();
+        }
+        return original.call(instance);
+    }
+
+    /**
+     * In turbo mode, stop waiting for the next tick as soon as every environment is ready for it.
+     */
+    @ModifyReturnValue(method = "shouldKeepTicking", at = @At("RETURN"))
+    protected boolean rlmc$turboShouldKeepTicking(boolean original) {
+        if (original && waitingForNextTick && Util.getMeasuringTimeNano() >= tickStartTimeNanos && TurboMode.isReady()) {
+            return false;
+        }
+        return original;
+    }
 
     @Inject(method = "tick", at = @At("HEAD"))
     protected void rlmc$preTick(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
         Rlmc.preTick();
+        AgentPool.tick((MinecraftServer) (Object) this);
     }
 
     @Inject(method = "tick", at = @At("RETURN"))
@@ -27,14 +63,28 @@ public abstract class MinecraftServerMixin {
         //Rlmc.forEachEnvironment(Environment::postTick);
     }
 
+    /**
+     * Tick each world only once every environment in it is ready. A world shared by many environments (see {@link ArenaAllocator})
+     * ticks once for all of them. Worlds that are only being prefetched load chunks without ticking anything.
+     */
     @WrapOperation(method = "tickWorlds", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/world/ServerWorld;tick(Ljava/util/function/BooleanSupplier;)V"))
     protected void rlmc$tickWorld(ServerWorld instance, BooleanSupplier shouldKeepTicking, Operation<Void> original) {
-        List<Environment<?, ?>> envs = Rlmc.getEnvironments().stream().filter(env -> env.isIn(instance)).toList();
+        if (WorldEnvironment.isPrefetching(instance.getRegistryKey())) {
+            instance.getChunkManager().tick(shouldKeepTicking, false);
+            return;
+        }
+        List<Environment<?, ?>> envs = List.copyOf(Rlmc.getEnvironmentsIn(instance.getRegistryKey()));
         boolean readyToTick = envs.stream().allMatch(Environment::waitingForTick);
         if (readyToTick) {
             envs.forEach(Environment::preTick);
             original.call(instance, shouldKeepTicking);
-            envs.forEach(Environment::postTick);
+            EntityGrid.markDirty(instance);
+            ParallelPostTick.postTick(envs);
         }
     }
+
+    @Inject(method = "tickWorlds", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/MinecraftServer;getNetworkIo()Lnet/minecraft/server/ServerNetworkIo;"))
+    protected void rlmc$runParallelPostTick(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        ParallelPostTick.runAll();
+    }
 }
@@ -3,10 +3,13 @@ package com.skycatdev.rlmc.mixin;
 
 import com.skycatdev.rlmc.command.EnvironmentExecutionSettingsBuilder;
 import com.skycatdev.rlmc.command.EnvironmentSettingsBuilder;
+import com.skycatdev.rlmc.environment.ArenaChunkGenerator;
+import com.skycatdev.rlmc.environment.ObservationComponent;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import net.minecraft.server.command.ServerCommandSource;
 import org.checkerframework.common.value.qual.IntRange;
 import org.jetbrains.annotations.Nullable;
@@ -33,8 +36,18 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
     @Unique protected List<Integer> rlmc$netArch = new LinkedList<>();
     @Unique @Nullable protected Integer rlmc$batchSize;
     @Unique protected boolean rlmc$monitor = true;
+    @Unique protected boolean rlmc$sharedMemory = false;
+    @Unique protected boolean rlmc$prefetchWorlds = false;
+    @Unique protected boolean rlmc$shareWorld = false;
+    @Unique @Nullable protected ArenaChunkGenerator.Layout rlmc$arenaLayout;
     @IntRange(from = 1) @Unique protected int rlmc$frameStack = 3;
     @IntRange(from = 0) @Unique protected int rlmc$timeLimit = 0;
+    @IntRange(from = 1) @Unique protected int rlmc$environmentCount = 1;
+    @IntRange(from = 1) @Unique protected int rlmc$frameSkip = 1;
+    @IntRange(from = 0) @Unique protected int rlmc$heightmapWidth = 0;
+    @IntRange(from = 0) @Unique protected int rlmc$voxelSize = 0;
+    @IntRange(from = 0) @Unique protected int rlmc$rememberedActions = 0;
+    @Unique @Nullable protected Set<ObservationComponent> rlmc$observationComponents;
 
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$addNetLayer(int neurons) {
@@ -59,6 +72,11 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return rlmc$algorithm == null ? "PPO" : rlmc$algorithm;
     }
 
+    @Override
+    public @Nullable ArenaChunkGenerator.Layout rlmc$getArenaLayout() {
+        return rlmc$arenaLayout;
+    }
+
     @Override
     public @Nullable Integer rlmc$getBatchSize() {
         return rlmc$batchSize;
@@ -69,16 +87,31 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return rlmc$entCoef;
     }
 
+    @Override
+    public @IntRange(from = 1) int rlmc$getEnvironmentCount() {
+        return rlmc$environmentCount;
+    }
+
     @Override
     public int rlmc$getEpisodesOrDefault() {
         return rlmc$episodes;
     }
 
+    @Override
+    public @IntRange(from = 1) int rlmc$getFrameSkip() {
+        return rlmc$frameSkip;
+    }
+
     @Override
     public @IntRange(from = 1) int rlmc$getFrameStack() {
         return rlmc$frameStack;
     }
 
+    @Override
+    public @IntRange(from = 0) int rlmc$getHeightmapWidth() {
+        return rlmc$heightmapWidth;
+    }
+
     @Override
     public @Nullable Double rlmc$getGaeLambda() {
         return rlmc$gaeLambda;
@@ -132,11 +165,26 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return rlmc$tensorboardLogPath;
     }
 
+    @Override
+    public @Nullable Set<ObservationComponent> rlmc$getObservationComponents() {
+        return rlmc$observationComponents;
+    }
+
     @Override
     public @IntRange(from = 0) int rlmc$getTimeLimit() {
         return rlmc$timeLimit;
     }
 
+    @Override
+    public @IntRange(from = 0) int rlmc$getRememberedActions() {
+        return rlmc$rememberedActions;
+    }
+
+    @Override
+    public @IntRange(from = 0) int rlmc$getVoxelSize() {
+        return rlmc$voxelSize;
+    }
+
     @Override
     public @Nullable Double rlmc$getVfCoef() {
         return rlmc$vfCoef;
@@ -147,11 +195,26 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return rlmc$training;
     }
 
+    @Override
+    public boolean rlmc$isPrefetchingWorlds() {
+        return rlmc$prefetchWorlds;
+    }
+
+    @Override
+    public boolean rlmc$isSharingWorld() {
+        return rlmc$shareWorld;
+    }
+
     @Override
     public boolean rlmc$isUsingMonitor() {
         return rlmc$monitor;
     }
 
+    @Override
+    public boolean rlmc$isUsingSharedMemory() {
+        return rlmc$sharedMemory;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setAlgorithm(String algorithm) {
         rlmc$algorithm = algorithm;
@@ -164,6 +227,12 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setArenaLayout(@Nullable ArenaChunkGenerator.Layout arenaLayout) {
+        rlmc$arenaLayout = arenaLayout;
+        return this;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setBatchSize(int batchSize) {
         rlmc$batchSize = batchSize;
@@ -176,6 +245,12 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setEnvironmentCount(@IntRange(from = 1) int environmentCount) {
+        rlmc$environmentCount = environmentCount;
+        return this;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setEpisodes(int episodes) {
         rlmc$episodes = episodes;
@@ -188,12 +263,24 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setFrameSkip(@IntRange(from = 1) int frameSkip) {
+        rlmc$frameSkip = frameSkip;
+        return this;
+    }
+
     @Override
     public EnvironmentSettingsBuilder rlmc$setFrameStack(@IntRange(from = 1) int frameStack) {
         rlmc$frameStack = frameStack;
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setHeightmapWidth(@IntRange(from = 0) int heightmapWidth) {
+        rlmc$heightmapWidth = heightmapWidth;
+        return this;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setGaeLambda(double gaeLambda) {
         rlmc$gaeLambda = gaeLambda;
@@ -230,6 +317,18 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setObservationComponents(@Nullable Set<ObservationComponent> observationComponents) {
+        rlmc$observationComponents = observationComponents;
+        return this;
+    }
+
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setPrefetchWorlds(boolean prefetchWorlds) {
+        rlmc$prefetchWorlds = prefetchWorlds;
+        return this;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setSavePath(String savePath) {
         rlmc$savePath = savePath;
@@ -243,6 +342,12 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setShareWorld(boolean shareWorld) {
+        rlmc$shareWorld = shareWorld;
+        return this;
+    }
+
     @Override
     public EnvironmentSettingsBuilder rlmc$setTimeLimit(@IntRange(from = 0) int timeLimit) {
         rlmc$timeLimit = timeLimit;
@@ -255,12 +360,30 @@ public abstract class ServerCommandSourceMixin implements EnvironmentExecutionSe
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setRememberedActions(@IntRange(from = 0) int rememberedActions) {
+        rlmc$rememberedActions = rememberedActions;
+        return this;
+    }
+
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setVoxelSize(@IntRange(from = 0) int voxelSize) {
+        rlmc$voxelSize = voxelSize;
+        return this;
+    }
+
     @Override
     public EnvironmentSettingsBuilder rlmc$setUseMonitor(boolean useMonitor) {
         rlmc$monitor = useMonitor;
         return this;
     }
 
+    @Override
+    public EnvironmentSettingsBuilder rlmc$setUseSharedMemory(boolean useSharedMemory) {
+        rlmc$sharedMemory = useSharedMemory;
+        return this;
+    }
+
     @Override
     public EnvironmentExecutionSettingsBuilder rlmc$setVfCoef(double vfCoef) {
         rlmc$vfCoef = vfCoef;